@@ -0,0 +1,638 @@
+package com.isoftstone.hgy.utils.redis;
+
+import io.lettuce.core.KeyValue;
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.RedisNoScriptException;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.async.RedisAsyncCommands;
+import io.lettuce.core.output.IntegerOutput;
+import io.lettuce.core.protocol.CommandArgs;
+import io.lettuce.core.protocol.CommandType;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Consumer;
+
+/**
+ * Redis异步工具类
+ * <p>
+ * 方法与RedisUtil一一对应，返回CompletableFuture，调用线程不等待redis响应；
+ * 所有调用共用RedisConfig中配置的一个lettuce连接(多路复用)，可以同时发出大量命令。
+ * 序列化方式与RedisTemplate一致，与RedisUtil读写的数据互通，也同样维护近端缓存。
+ * 回调默认在lettuce的IO线程中执行，回调中不要调用阻塞方法(包括RedisUtil)，需要时使用thenApplyAsync。
+ * redis.async.enabled=true时启用
+ *
+ * @author Colin.Ye
+ * @version 1.0
+ * @ClassName AsyncRedisUtil
+ * @date 2019/8/22
+ **/
+@Component
+@ConditionalOnProperty(prefix = "redis.async", name = "enabled", havingValue = "true")
+public class AsyncRedisUtil {
+
+    @Autowired
+    private StatefulRedisConnection<String, Object> asyncRedisConnection;
+
+    @Autowired
+    private RedisSerializer<Object> redisValueSerializer;
+
+    /**
+     * 本地近端缓存，未启用时为null
+     */
+    @Autowired(required = false)
+    private NearCache nearCache;
+
+    /**
+     * 近端缓存跨节点失效广播，未启用时为null
+     */
+    @Autowired(required = false)
+    private NearCacheInvalidator nearCacheInvalidator;
+
+    /**
+     * 错误日志时间窗口(毫秒)，与RedisUtil共用redis.errors配置
+     */
+    @Value("${redis.errors.log-interval:1000}")
+    private long errorLogInterval;
+
+    @Value("${redis.errors.log-per-interval:1}")
+    private int errorLogPerInterval;
+
+    /**
+     * 为true时返回的future以RedisOperationException异常结束，不再返回false/null/0
+     */
+    @Value("${redis.errors.propagate:false}")
+    private boolean errorPropagate;
+
+    private volatile RedisErrorReporter errorReporter = new RedisErrorReporter(AsyncRedisUtil.class);
+
+    private RedisAsyncCommands<String, Object> commands;
+
+    private SerializerRedisCodec codec;
+
+    @PostConstruct
+    public void init() {
+        this.errorReporter = new RedisErrorReporter(AsyncRedisUtil.class, errorLogInterval, errorLogPerInterval, errorPropagate);
+        this.commands = asyncRedisConnection.async();
+        this.codec = new SerializerRedisCodec(redisValueSerializer);
+    }
+
+    // =============================common============================
+
+    /**
+     * 指定缓存失效时间
+     *
+     * @param key  键
+     * @param time 时间(秒)
+     * @return
+     */
+    public CompletableFuture<Boolean> expire(String key, long time) {
+        if (time <= 0) {
+            return CompletableFuture.completedFuture(true);
+        }
+        return orElse("expire", key, invalidateNearCache(commands.expire(key, time), key), false);
+    }
+
+    /**
+     * 根据key 获取过期时间
+     *
+     * @param key 键 不能为null
+     * @return 时间(秒) 返回-1代表为永久有效
+     */
+    public CompletableFuture<Long> getExpire(String key) {
+        return commands.ttl(key).toCompletableFuture();
+    }
+
+    /**
+     * 判断key是否存在
+     *
+     * @param key 键
+     * @return true 存在 false不存在
+     */
+    public CompletableFuture<Boolean> hasKey(String key) {
+        return orElse("hasKey", key, commands.exists(key).thenApply(count -> count > 0), false);
+    }
+
+    /**
+     * 删除缓存
+     *
+     * @param key 可以传一个值 或多个
+     * @return 删除的个数
+     */
+    public CompletableFuture<Long> del(String... key) {
+        if (key == null || key.length == 0) {
+            return CompletableFuture.completedFuture(0L);
+        }
+        return invalidateNearCache(commands.del(key), key);
+    }
+
+    // ============================String=============================
+
+    /**
+     * 普通缓存获取
+     *
+     * @param key 键
+     * @return 值
+     */
+    public CompletableFuture<Object> get(String key) {
+        if (key == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        if (nearCache == null) {
+            return commands.get(key).toCompletableFuture();
+        }
+        Object cached = nearCache.get(key);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        // 两条命令在同一连接上连续发出，与RedisUtil的管道读取等价
+        long generation = nearCache.generation(key);
+        RedisFuture<Object> value = commands.get(key);
+        RedisFuture<Long> pttl = commands.pttl(key);
+        return value.toCompletableFuture().thenCombine(pttl, (v, ttl) -> {
+            nearCache.put(key, v, ttl, generation);
+            return v;
+        });
+    }
+
+    /**
+     * 普通缓存放入
+     *
+     * @param key   键
+     * @param value 值
+     * @return true成功 false失败
+     */
+    public CompletableFuture<Boolean> set(String key, Object value) {
+        return orElse("set", key, invalidateNearCache(commands.set(key, value).thenApply(ok -> true), key), false);
+    }
+
+    /**
+     * 普通缓存放入并设置时间
+     *
+     * @param key   键
+     * @param value 值
+     * @param time  时间(秒) time要大于0 如果time小于等于0 将设置无限期
+     * @return true成功 false 失败
+     */
+    public CompletableFuture<Boolean> set(String key, Object value, long time) {
+        if (time <= 0) {
+            return set(key, value);
+        }
+        return orElse("set", key, invalidateNearCache(commands.setex(key, time, value).thenApply(ok -> true), key), false);
+    }
+
+    /**
+     * 递增
+     *
+     * @param key   键
+     * @param delta 要增加几(大于0)
+     * @return
+     */
+    public CompletableFuture<Long> incr(String key, long delta) {
+        if (delta < 0) {
+            throw new RuntimeException("递增因子必须大于0");
+        }
+        return invalidateNearCache(commands.incrby(key, delta), key);
+    }
+
+    /**
+     * 递减
+     *
+     * @param key   键
+     * @param delta 要减少几(小于0)
+     * @return
+     */
+    public CompletableFuture<Long> decr(String key, long delta) {
+        if (delta < 0) {
+            throw new RuntimeException("递减因子必须大于0");
+        }
+        return invalidateNearCache(commands.incrby(key, -delta), key);
+    }
+
+    /**
+     * 批量获取普通缓存(MGET)，不经过近端缓存
+     *
+     * @param keys 键
+     * @return 值 与keys顺序一致，不存在的key对应null
+     */
+    public CompletableFuture<List<Object>> mget(Collection<String> keys) {
+        if (keys.isEmpty()) {
+            // 不带key的MGET会被redis拒绝，与RedisUtil.mget一致返回空列表
+            return CompletableFuture.completedFuture(new ArrayList<>());
+        }
+        return commands.mget(keys.toArray(new String[0])).thenApply(result -> {
+            List<Object> values = new ArrayList<>(result.size());
+            for (KeyValue<String, Object> keyValue : result) {
+                values.add(keyValue.getValueOrElse(null));
+            }
+            return values;
+        }).toCompletableFuture();
+    }
+
+    // ================================Map=================================
+
+    /**
+     * HashGet
+     *
+     * @param key  键 不能为null
+     * @param item 项 不能为null
+     * @return 值
+     */
+    public CompletableFuture<Object> hget(String key, String item) {
+        if (nearCache == null) {
+            return commands.hget(key, item).toCompletableFuture();
+        }
+        Object cached = nearCache.hget(key, item);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        long generation = nearCache.generation(key);
+        RedisFuture<Object> value = commands.hget(key, item);
+        RedisFuture<Long> pttl = commands.pttl(key);
+        return value.toCompletableFuture().thenCombine(pttl, (v, ttl) -> {
+            nearCache.hput(key, item, v, ttl, generation);
+            return v;
+        });
+    }
+
+    /**
+     * 获取hashKey对应的所有键值
+     *
+     * @param key 键
+     * @return 对应的多个键值
+     */
+    public CompletableFuture<Map<String, Object>> hmget(String key) {
+        return commands.hgetall(key).toCompletableFuture();
+    }
+
+    /**
+     * HashSet
+     *
+     * @param key 键
+     * @param map 对应多个键值
+     * @return true 成功 false 失败
+     */
+    public CompletableFuture<Boolean> hmset(String key, Map<String, Object> map) {
+        return orElse("hmset", key, invalidateNearCache(commands.hmset(key, map).thenApply(ok -> true), key), false);
+    }
+
+    /**
+     * HashSet 并设置时间，写入和设置时间在同一个脚本中原子执行
+     *
+     * @param key  键
+     * @param map  对应多个键值
+     * @param time 时间(秒)
+     * @return true成功 false失败
+     */
+    public CompletableFuture<Boolean> hmset(String key, Map<String, Object> map, long time) {
+        if (time <= 0) {
+            return hmset(key, map);
+        }
+        CompletableFuture<Long> result = execute(RedisUtil.HSET_AND_EXPIRE, key, time,
+                args -> map.forEach((item, value) -> args.add(item).addValue(value)));
+        return orElse("hmset", key, invalidateNearCache(result.thenApply(ok -> true), key), false);
+    }
+
+    /**
+     * 向一张hash表中放入数据,如果不存在将创建
+     *
+     * @param key   键
+     * @param item  项
+     * @param value 值
+     * @return true 成功 false失败
+     */
+    public CompletableFuture<Boolean> hset(String key, String item, Object value) {
+        return orElse("hset", key, invalidateNearCache(commands.hset(key, item, value).thenApply(created -> true), key), false);
+    }
+
+    /**
+     * 向一张hash表中放入数据,如果不存在将创建
+     *
+     * @param key   键
+     * @param item  项
+     * @param value 值
+     * @param time  时间(秒) 注意:如果已存在的hash表有时间,这里将会替换原有的时间
+     * @return true 成功 false失败
+     */
+    public CompletableFuture<Boolean> hset(String key, String item, Object value, long time) {
+        if (time <= 0) {
+            return hset(key, item, value);
+        }
+        CompletableFuture<Long> result = execute(RedisUtil.HSET_AND_EXPIRE, key, time, args -> args.add(item).addValue(value));
+        return orElse("hset", key, invalidateNearCache(result.thenApply(ok -> true), key), false);
+    }
+
+    /**
+     * 删除hash表中的值
+     *
+     * @param key  键 不能为null
+     * @param item 项 可以使多个 不能为null
+     * @return 删除的个数
+     */
+    public CompletableFuture<Long> hdel(String key, String... item) {
+        return invalidateNearCache(commands.hdel(key, item), key);
+    }
+
+    /**
+     * 判断hash表中是否有该项的值
+     *
+     * @param key  键 不能为null
+     * @param item 项 不能为null
+     * @return true 存在 false不存在
+     */
+    public CompletableFuture<Boolean> hHasKey(String key, String item) {
+        return commands.hexists(key, item).toCompletableFuture();
+    }
+
+    /**
+     * hash递增 如果不存在,就会创建一个 并把新增后的值返回
+     *
+     * @param key  键
+     * @param item 项
+     * @param by   要增加几(大于0)
+     * @return
+     */
+    public CompletableFuture<Double> hincr(String key, String item, double by) {
+        return invalidateNearCache(commands.hincrbyfloat(key, item, by), key);
+    }
+
+    /**
+     * hash递减
+     *
+     * @param key  键
+     * @param item 项
+     * @param by   要减少记(小于0)
+     * @return
+     */
+    public CompletableFuture<Double> hdecr(String key, String item, double by) {
+        return invalidateNearCache(commands.hincrbyfloat(key, item, -by), key);
+    }
+
+    // ============================set=============================
+
+    /**
+     * 根据key获取Set中的所有值
+     *
+     * @param key 键
+     * @return
+     */
+    public CompletableFuture<Set<Object>> sGet(String key) {
+        return orElse("sGet", key, commands.smembers(key).toCompletableFuture(), null);
+    }
+
+    /**
+     * 根据value从一个set中查询,是否存在
+     *
+     * @param key   键
+     * @param value 值
+     * @return true 存在 false不存在
+     */
+    public CompletableFuture<Boolean> sHasKey(String key, Object value) {
+        return orElse("sHasKey", key, commands.sismember(key, value).toCompletableFuture(), false);
+    }
+
+    /**
+     * 将数据放入set缓存
+     *
+     * @param key    键
+     * @param values 值 可以是多个
+     * @return 成功个数
+     */
+    public CompletableFuture<Long> sSet(String key, Object... values) {
+        return orElse("sSet", key, commands.sadd(key, values).toCompletableFuture(), 0L);
+    }
+
+    /**
+     * 将set数据放入缓存
+     *
+     * @param key    键
+     * @param time   时间(秒)
+     * @param values 值 可以是多个
+     * @return 成功个数
+     */
+    public CompletableFuture<Long> sSetAndTime(String key, long time, Object... values) {
+        if (time <= 0) {
+            return sSet(key, values);
+        }
+        return orElse("sSetAndTime", key, execute(RedisUtil.SADD_AND_EXPIRE, key, time, args -> args.addValues(values)), 0L);
+    }
+
+    /**
+     * 获取set缓存的长度
+     *
+     * @param key 键
+     * @return
+     */
+    public CompletableFuture<Long> sGetSetSize(String key) {
+        return orElse("sGetSetSize", key, commands.scard(key).toCompletableFuture(), 0L);
+    }
+
+    /**
+     * 移除值为value的
+     *
+     * @param key    键
+     * @param values 值 可以是多个
+     * @return 移除的个数
+     */
+    public CompletableFuture<Long> setRemove(String key, Object... values) {
+        return orElse("setRemove", key, commands.srem(key, values).toCompletableFuture(), 0L);
+    }
+
+    // ===============================list=================================
+
+    /**
+     * 获取list缓存的内容
+     *
+     * @param key   键
+     * @param start 开始
+     * @param end   结束 0 到 -1代表所有值
+     * @return
+     */
+    public CompletableFuture<List<Object>> lGet(String key, long start, long end) {
+        return orElse("lGet", key, commands.lrange(key, start, end).toCompletableFuture(), null);
+    }
+
+    /**
+     * 获取list缓存的长度
+     *
+     * @param key 键
+     * @return
+     */
+    public CompletableFuture<Long> lGetListSize(String key) {
+        return orElse("lGetListSize", key, commands.llen(key).toCompletableFuture(), 0L);
+    }
+
+    /**
+     * 通过索引 获取list中的值
+     *
+     * @param key   键
+     * @param index 索引 index>=0时， 0 表头，1 第二个元素，依次类推；index<0时，-1，表尾，-2倒数第二个元素，依次类推
+     * @return
+     */
+    public CompletableFuture<Object> lGetIndex(String key, long index) {
+        return orElse("lGetIndex", key, commands.lindex(key, index).toCompletableFuture(), null);
+    }
+
+    /**
+     * 将list放入缓存
+     *
+     * @param key   键
+     * @param value 值
+     * @return
+     */
+    public CompletableFuture<Boolean> lSet(String key, Object value) {
+        return orElse("lSet", key, commands.rpush(key, value).thenApply(size -> true).toCompletableFuture(), false);
+    }
+
+    /**
+     * 将list放入缓存
+     *
+     * @param key   键
+     * @param value 值
+     * @param time  时间(秒)
+     * @return
+     */
+    public CompletableFuture<Boolean> lSet(String key, Object value, long time) {
+        if (time <= 0) {
+            return lSet(key, value);
+        }
+        return orElse("lSet", key, execute(RedisUtil.RPUSH_AND_EXPIRE, key, time, args -> args.addValue(value)).thenApply(size -> true), false);
+    }
+
+    /**
+     * 将list放入缓存
+     *
+     * @param key   键
+     * @param value 值
+     * @return
+     */
+    public CompletableFuture<Boolean> lSet(String key, List<Object> value) {
+        return orElse("lSet", key, commands.rpush(key, value.toArray()).thenApply(size -> true).toCompletableFuture(), false);
+    }
+
+    /**
+     * 将list放入缓存
+     *
+     * @param key   键
+     * @param value 值
+     * @param time  时间(秒)
+     * @return
+     */
+    public CompletableFuture<Boolean> lSet(String key, List<Object> value, long time) {
+        if (time <= 0) {
+            return lSet(key, value);
+        }
+        return orElse("lSet", key, execute(RedisUtil.RPUSH_AND_EXPIRE, key, time, args -> args.addValues(value)).thenApply(size -> true), false);
+    }
+
+    /**
+     * 根据索引修改list中的某条数据
+     *
+     * @param key   键
+     * @param index 索引
+     * @param value 值
+     * @return
+     */
+    public CompletableFuture<Boolean> lUpdateIndex(String key, long index, Object value) {
+        return orElse("lUpdateIndex", key, commands.lset(key, index, value).thenApply(ok -> true).toCompletableFuture(), false);
+    }
+
+    /**
+     * 移除N个值为value
+     *
+     * @param key   键
+     * @param count 移除多少个
+     * @param value 值
+     * @return 移除的个数
+     */
+    public CompletableFuture<Long> lRemove(String key, long count, Object value) {
+        return orElse("lRemove", key, commands.lrem(key, count, value).toCompletableFuture(), 0L);
+    }
+
+    // ===============================script=================================
+
+    /**
+     * 执行RedisUtil中的脚本，ARGV[1]为时间，其后由argv追加；redis重启丢失脚本时回退到EVAL
+     */
+    private CompletableFuture<Long> execute(RedisScript<Long> script, String key, long time,
+                                            Consumer<CommandArgs<String, Object>> argv) {
+        CommandArgs<String, Object> args = scriptArgs(script.getSha1(), key, time, argv);
+        return commands.dispatch(CommandType.EVALSHA, new IntegerOutput<>(codec), args).toCompletableFuture()
+                .handle((result, e) -> {
+                    if (e == null) {
+                        return CompletableFuture.completedFuture(result);
+                    }
+                    Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                    if (cause instanceof RedisNoScriptException) {
+                        CommandArgs<String, Object> evalArgs = scriptArgs(script.getScriptAsString(), key, time, argv);
+                        return commands.dispatch(CommandType.EVAL, new IntegerOutput<>(codec), evalArgs).toCompletableFuture();
+                    }
+                    CompletableFuture<Long> failed = new CompletableFuture<>();
+                    failed.completeExceptionally(cause);
+                    return failed;
+                })
+                .thenCompose(future -> future);
+    }
+
+    private CommandArgs<String, Object> scriptArgs(String script, String key, long time,
+                                                   Consumer<CommandArgs<String, Object>> argv) {
+        CommandArgs<String, Object> args = new CommandArgs<>(codec).add(script).add(1).addKey(key).add(time);
+        argv.accept(args);
+        return args;
+    }
+
+    // ===============================near cache=================================
+
+    /**
+     * 写入成功后清除近端缓存并广播，广播同样通过异步连接发出，不阻塞IO线程
+     */
+    private <T> CompletableFuture<T> invalidateNearCache(CompletionStage<T> write, String... key) {
+        CompletableFuture<T> future = write.toCompletableFuture();
+        if (nearCache == null && nearCacheInvalidator == null) {
+            return future;
+        }
+        return future.thenApply(result -> {
+            if (nearCache != null) {
+                nearCache.invalidate(key);
+            }
+            if (nearCacheInvalidator != null) {
+                CommandArgs<String, Object> args = new CommandArgs<>(codec)
+                        .add(nearCacheInvalidator.getChannel())
+                        .add(nearCacheInvalidator.message(key));
+                commands.dispatch(CommandType.PUBLISH, new IntegerOutput<>(codec), args)
+                        .thenRun(nearCacheInvalidator::recordPublished);
+            }
+            return result;
+        });
+    }
+
+    /**
+     * 失败时上报并返回默认值；在lettuce的IO线程中执行，RedisErrorReporter限流，不会在System.err上阻塞
+     */
+    private <T> CompletableFuture<T> orElse(String operation, String key, CompletionStage<T> stage, T fallback) {
+        return stage.toCompletableFuture().exceptionally(e -> {
+            errorReporter.report(operation, key, e instanceof CompletionException && e.getCause() != null ? e.getCause() : e);
+            return fallback;
+        });
+    }
+
+    /**
+     * @return 错误上报，可查看失败次数
+     */
+    public RedisErrorReporter getErrorReporter() {
+        return errorReporter;
+    }
+}
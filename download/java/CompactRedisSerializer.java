@@ -0,0 +1,183 @@
+package com.isoftstone.hgy.utils.redis;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.PropertyAccessor;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+import org.springframework.util.ClassUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 紧凑二进制序列化方式(Smile)
+ * <p>
+ * 首字节为格式标识：0x01 后跟2字节类ID，0x02 后跟类名；其余视为旧的JSON格式交给legacy读取，
+ * 因此切换后旧数据仍可读。字符串、数字、布尔值仍按JSON文本写入，保证INCR/HINCRBY可用。
+ * <p>
+ * 只记录根对象的类型，字段声明为Object等非具体类型时会被读成Map/List；
+ * 根对象为Collection、Map、数组时元素类型无法还原，仍按legacy(带类型的JSON)写入。
+ * <p>
+ * 0x02格式只读写allowPackages允许的包下的类，防止从redis读到任意类名时加载该类；
+ * 不在允许范围内的未注册类按legacy写入
+ *
+ * @author Colin.Ye
+ * @version 1.0
+ * @ClassName CompactRedisSerializer
+ * @date 2019/8/22
+ **/
+public class CompactRedisSerializer implements RedisSerializer<Object> {
+
+    static final byte FORMAT_REGISTERED = 0x01;
+    static final byte FORMAT_NAMED = 0x02;
+
+    private static final byte[] EMPTY_ARRAY = new byte[0];
+
+    private final ObjectMapper mapper;
+
+    private final RedisSerializer<Object> legacy;
+
+    private final Map<Class<?>, Integer> classToId = new ConcurrentHashMap<>();
+    private final Map<Integer, Class<?>> idToClass = new ConcurrentHashMap<>();
+    private final Map<String, Class<?>> nameToClass = new ConcurrentHashMap<>();
+
+    /**
+     * 0x02格式允许的包前缀，均以.结尾
+     */
+    private final List<String> allowedPackages = new CopyOnWriteArrayList<>();
+
+    /**
+     * @param legacy 旧的JSON序列化方式，用于读取切换前写入的数据及写入字符串、数字
+     */
+    public CompactRedisSerializer(RedisSerializer<Object> legacy) {
+        this.legacy = legacy;
+        this.mapper = new ObjectMapper(new SmileFactory());
+        mapper.setVisibility(PropertyAccessor.ALL, JsonAutoDetect.Visibility.ANY);
+        mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    }
+
+    /**
+     * 注册类ID，注册过的类只写2字节ID而不写类名；所有节点的注册表必须一致，ID一旦使用不能变更
+     *
+     * @param id   类ID 1-65535
+     * @param type 类
+     * @return this
+     */
+    public CompactRedisSerializer register(int id, Class<?> type) {
+        if (id <= 0 || id > 0xFFFF) {
+            throw new IllegalArgumentException("类ID必须在1-65535之间");
+        }
+        Class<?> previous = idToClass.putIfAbsent(id, type);
+        if (previous != null && previous != type) {
+            throw new IllegalArgumentException("类ID " + id + " 已被 " + previous.getName() + " 使用");
+        }
+        classToId.put(type, id);
+        return this;
+    }
+
+    /**
+     * 允许以类名(0x02格式)读写的包，包括子包；未调用时只有注册过的类使用Smile
+     *
+     * @param packages 包名，如 com.isoftstone.hgy.dto
+     * @return this
+     */
+    public CompactRedisSerializer allowPackages(String... packages) {
+        for (String name : packages) {
+            String prefix = name.trim();
+            if (!prefix.isEmpty()) {
+                allowedPackages.add(prefix.endsWith(".") ? prefix : prefix + ".");
+            }
+        }
+        return this;
+    }
+
+    @Override
+    public byte[] serialize(Object o) throws SerializationException {
+        if (o == null) {
+            return EMPTY_ARRAY;
+        }
+        if (o instanceof CharSequence || o instanceof Number || o instanceof Boolean
+                || o instanceof Collection || o instanceof Map || o.getClass().isArray()) {
+            return legacy.serialize(o);
+        }
+        Integer id = classToId.get(o.getClass());
+        if (id == null && !isAllowed(o.getClass().getName())) {
+            return legacy.serialize(o);
+        }
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+            DataOutputStream out = new DataOutputStream(bytes);
+            if (id != null) {
+                out.writeByte(FORMAT_REGISTERED);
+                out.writeShort(id);
+            } else {
+                out.writeByte(FORMAT_NAMED);
+                out.writeUTF(o.getClass().getName());
+            }
+            mapper.writeValue(bytes, o);
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new SerializationException("Could not write Smile: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public Object deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        if (bytes[0] != FORMAT_REGISTERED && bytes[0] != FORMAT_NAMED) {
+            return legacy.deserialize(bytes);
+        }
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes, 1, bytes.length - 1);
+            Class<?> type;
+            if (bytes[0] == FORMAT_REGISTERED) {
+                int id = buffer.getShort() & 0xFFFF;
+                type = idToClass.get(id);
+                if (type == null) {
+                    throw new SerializationException("未注册的类ID: " + id);
+                }
+            } else {
+                byte[] name = new byte[buffer.getShort() & 0xFFFF];
+                buffer.get(name);
+                type = resolve(new String(name, StandardCharsets.UTF_8));
+            }
+            return mapper.readValue(bytes, buffer.position(), buffer.remaining(), type);
+        } catch (IOException | ClassNotFoundException e) {
+            throw new SerializationException("Could not read Smile: " + e.getMessage(), e);
+        }
+    }
+
+    private boolean isAllowed(String name) {
+        for (String prefix : allowedPackages) {
+            if (name.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Class<?> resolve(String name) throws ClassNotFoundException {
+        Class<?> type = nameToClass.get(name);
+        if (type == null) {
+            if (!isAllowed(name)) {
+                throw new SerializationException("类不在redis.serializer.allowed-packages允许范围内: " + name);
+            }
+            type = ClassUtils.forName(name, getClass().getClassLoader());
+            nameToClass.put(name, type);
+        }
+        return type;
+    }
+}
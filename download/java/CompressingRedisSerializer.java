@@ -0,0 +1,38 @@
+package com.isoftstone.hgy.utils.redis;
+
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+/**
+ * 压缩序列化方式，包装任意value序列化方式，超过阈值的value透明压缩/解压
+ *
+ * @author Colin.Ye
+ * @version 1.0
+ * @ClassName CompressingRedisSerializer
+ * @date 2019/8/22
+ **/
+public class CompressingRedisSerializer implements RedisSerializer<Object> {
+
+    private final RedisSerializer<Object> delegate;
+
+    private final ValueCompressor compressor;
+
+    public CompressingRedisSerializer(RedisSerializer<Object> delegate, ValueCompressor compressor) {
+        this.delegate = delegate;
+        this.compressor = compressor;
+    }
+
+    @Override
+    public byte[] serialize(Object o) throws SerializationException {
+        return compressor.compress(delegate.serialize(o));
+    }
+
+    @Override
+    public Object deserialize(byte[] bytes) throws SerializationException {
+        try {
+            return delegate.deserialize(compressor.decompress(bytes));
+        } catch (IllegalStateException e) {
+            throw new SerializationException(e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,458 @@
+package com.isoftstone.hgy.utils.redis;
+
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * 计数器写缓冲，RedisUtil的incr/decr/hincr/hdecr在redis.counter.buffered=true时使用
+ * <p>
+ * 增量先累加到本地LongAdder/DoubleAdder(按key/项各一个，多线程写同一key时分段累加不争用)，
+ * 每flushInterval毫秒或累计maxPending次增量后，所有非0增量在一次管道中以INCRBY/HINCRBYFLOAT写入redis；
+ * close时再写一次。写入失败时增量保留到下次。
+ * <p>
+ * 本地累计与redis之间最多相差一个周期，进程异常退出时未写入的增量丢失。
+ * 连续两次写入之间没有增量的key/项从本地移除，按分钟、按天生成的key不会一直占用名额；再次累加时重新缓冲，
+ * 返回值在下一次写入前按0计算。移除前已取到计数器的线程仍可能写入，移除的计数器在下一次写入时再写一次后丢弃。
+ * 同时缓冲的key(或同一hash的项)数量超过maxKeys时，新的key不再缓冲，由调用方直接写redis
+ *
+ * @author Colin.Ye
+ * @version 1.0
+ * @ClassName CounterBuffer
+ * @date 2019/8/22
+ **/
+public class CounterBuffer implements AutoCloseable {
+
+    /**
+     * 每次增量以1/CHECK_EVERY的概率检查是否达到maxPending，避免每次都汇总LongAdder
+     */
+    private static final int CHECK_EVERY = 16;
+
+    /**
+     * 小于该值的浮点增量视为0，DoubleAdder扣减后可能残留舍入误差
+     */
+    private static final double DOUBLE_EPSILON = 1e-9;
+
+    private final RedisTemplate<String, Object> redisTemplate;
+
+    private final int maxPending;
+
+    private final int maxKeys;
+
+    /**
+     * 写入成功后通知，参数为写入的key
+     */
+    private final Consumer<String[]> onFlushed;
+
+    private final RedisErrorReporter errorReporter;
+
+    private final ConcurrentMap<String, LongCounter> counters = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, ConcurrentMap<String, DoubleCounter>> hashCounters = new ConcurrentHashMap<>();
+
+    /**
+     * 上次写入后从counters/hashCounters移除的计数器，只在flush中访问
+     */
+    private List<RetiredLong> retiredLongs = new ArrayList<>();
+
+    private List<RetiredHash> retiredHashes = new ArrayList<>();
+
+    private final LongAdder pending = new LongAdder();
+
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+
+    private final ScheduledExecutorService scheduler;
+
+    private final LongAdder addCount = new LongAdder();
+    private final LongAdder flushCount = new LongAdder();
+    private final LongAdder flushedCommandCount = new LongAdder();
+    private final LongAdder failedFlushCount = new LongAdder();
+    private final LongAdder evictedCount = new LongAdder();
+
+    private volatile boolean closed;
+
+    /**
+     * @param redisTemplate   写入使用的redisTemplate，key/hash项按其序列化方式
+     * @param flushIntervalMs 定期写入间隔(毫秒)
+     * @param maxPending      累计多少次增量后提前写入
+     * @param maxKeys         最多缓冲的key数，同一hash最多缓冲的项数
+     * @param onFlushed       写入成功后调用，可以为null
+     * @param errorReporter   写入失败时上报
+     */
+    public CounterBuffer(RedisTemplate<String, Object> redisTemplate, long flushIntervalMs, int maxPending, int maxKeys,
+                         Consumer<String[]> onFlushed, RedisErrorReporter errorReporter) {
+        this.redisTemplate = redisTemplate;
+        this.maxPending = maxPending;
+        this.maxKeys = maxKeys;
+        this.onFlushed = onFlushed;
+        this.errorReporter = errorReporter;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "redis-counter-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 累加计数器增量
+     *
+     * @param key   键
+     * @param delta 增量 可以为负
+     * @return 上次写入后redis中的值加上本地未写入的增量；已关闭或key数量超出上限时返回null
+     */
+    public Long add(String key, long delta) {
+        if (closed) {
+            return null;
+        }
+        LongCounter counter = counters.get(key);
+        if (counter == null) {
+            if (counters.size() >= maxKeys) {
+                return null;
+            }
+            counter = counters.computeIfAbsent(key, k -> new LongCounter());
+        }
+        counter.pending.add(delta);
+        added();
+        return counter.flushed + counter.pending.sum();
+    }
+
+    /**
+     * 累加hash项增量
+     *
+     * @param key   键
+     * @param item  项
+     * @param delta 增量 可以为负
+     * @return 上次写入后redis中的值加上本地未写入的增量；已关闭或数量超出上限时返回null
+     */
+    public Double addHash(String key, String item, double delta) {
+        if (closed) {
+            return null;
+        }
+        ConcurrentMap<String, DoubleCounter> items = hashCounters.get(key);
+        if (items == null) {
+            if (hashCounters.size() >= maxKeys) {
+                return null;
+            }
+            items = hashCounters.computeIfAbsent(key, k -> new ConcurrentHashMap<>());
+        }
+        DoubleCounter counter = items.get(item);
+        if (counter == null) {
+            if (items.size() >= maxKeys) {
+                return null;
+            }
+            counter = items.computeIfAbsent(item, i -> new DoubleCounter());
+        }
+        counter.pending.add(delta);
+        added();
+        return counter.flushed + counter.pending.sum();
+    }
+
+    /**
+     * @return 本地未写入redis的增量
+     */
+    public long getPending(String key) {
+        LongCounter counter = counters.get(key);
+        return counter == null ? 0 : counter.pending.sum();
+    }
+
+    /**
+     * @return 本地未写入redis的增量
+     */
+    public double getPending(String key, String item) {
+        ConcurrentMap<String, DoubleCounter> items = hashCounters.get(key);
+        DoubleCounter counter = items == null ? null : items.get(item);
+        return counter == null ? 0 : counter.pending.sum();
+    }
+
+    /**
+     * 立即把所有未写入的增量写入redis
+     *
+     * @throws RuntimeException 写入失败时，增量保留
+     */
+    public synchronized void flush() {
+        List<String> longKeys = new ArrayList<>();
+        List<LongCounter> longCounters = new ArrayList<>();
+        List<Long> longDeltas = new ArrayList<>();
+        for (Map.Entry<String, LongCounter> entry : counters.entrySet()) {
+            long delta = entry.getValue().pending.sum();
+            if (delta != 0) {
+                longKeys.add(entry.getKey());
+                longCounters.add(entry.getValue());
+                longDeltas.add(delta);
+            }
+        }
+        for (RetiredLong retired : retiredLongs) {
+            long delta = retired.counter.pending.sum();
+            if (delta != 0) {
+                longKeys.add(retired.key);
+                longCounters.add(retired.counter);
+                longDeltas.add(delta);
+            }
+        }
+        List<String> hashKeys = new ArrayList<>();
+        List<String> hashItems = new ArrayList<>();
+        List<DoubleCounter> hashCounterList = new ArrayList<>();
+        List<Double> hashDeltas = new ArrayList<>();
+        List<RetiredHash> hashes = new ArrayList<>(retiredHashes);
+        for (Map.Entry<String, ConcurrentMap<String, DoubleCounter>> hash : hashCounters.entrySet()) {
+            hashes.add(new RetiredHash(hash.getKey(), hash.getValue()));
+        }
+        for (RetiredHash hash : hashes) {
+            for (Map.Entry<String, DoubleCounter> entry : hash.items.entrySet()) {
+                double delta = entry.getValue().pending.sum();
+                if (Math.abs(delta) >= DOUBLE_EPSILON) {
+                    hashKeys.add(hash.key);
+                    hashItems.add(entry.getKey());
+                    hashCounterList.add(entry.getValue());
+                    hashDeltas.add(delta);
+                }
+            }
+        }
+        long adds = pending.sum();
+        if (longKeys.isEmpty() && hashKeys.isEmpty()) {
+            pending.add(-adds);
+            evictIdle();
+            return;
+        }
+
+        RedisSerializer<String> keySerializer = serializer(redisTemplate.getKeySerializer());
+        RedisSerializer<String> hashKeySerializer = serializer(redisTemplate.getHashKeySerializer());
+        List<Object> results;
+        try {
+            results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (int i = 0; i < longKeys.size(); i++) {
+                    connection.incrBy(keySerializer.serialize(longKeys.get(i)), longDeltas.get(i));
+                }
+                for (int i = 0; i < hashKeys.size(); i++) {
+                    connection.hIncrBy(keySerializer.serialize(hashKeys.get(i)),
+                            hashKeySerializer.serialize(hashItems.get(i)), hashDeltas.get(i));
+                }
+                return null;
+            });
+        } catch (RuntimeException e) {
+            failedFlushCount.increment();
+            throw e;
+        }
+
+        // 只扣减已写入的部分，写入期间新到的增量留到下次
+        for (int i = 0; i < longKeys.size(); i++) {
+            LongCounter counter = longCounters.get(i);
+            counter.pending.add(-longDeltas.get(i));
+            counter.idle = false;
+            counter.flushed = ((Number) results.get(i)).longValue();
+        }
+        for (int i = 0; i < hashKeys.size(); i++) {
+            DoubleCounter counter = hashCounterList.get(i);
+            counter.pending.add(-hashDeltas.get(i));
+            counter.idle = false;
+            counter.flushed = ((Number) results.get(longKeys.size() + i)).doubleValue();
+        }
+        pending.add(-adds);
+        flushCount.increment();
+        flushedCommandCount.add(results.size());
+        evictIdle();
+        if (onFlushed != null) {
+            Set<String> keys = new LinkedHashSet<>(longKeys);
+            keys.addAll(hashKeys);
+            onFlushed.accept(keys.toArray(new String[0]));
+        }
+    }
+
+    /**
+     * 停止定期写入，并写入剩余的增量
+     */
+    @Override
+    public void close() {
+        closed = true;
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flushQuietly();
+    }
+
+    // =============================统计============================
+
+    /**
+     * @return 累加次数
+     */
+    public long getAddCount() {
+        return addCount.sum();
+    }
+
+    /**
+     * @return 写入redis的批次数
+     */
+    public long getFlushCount() {
+        return flushCount.sum();
+    }
+
+    /**
+     * @return 写入redis的命令数(INCRBY/HINCRBYFLOAT)
+     */
+    public long getFlushedCommandCount() {
+        return flushedCommandCount.sum();
+    }
+
+    /**
+     * @return 写入失败的批次数
+     */
+    public long getFailedFlushCount() {
+        return failedFlushCount.sum();
+    }
+
+    /**
+     * @return 增量写完后从本地移除的key/项数
+     */
+    public long getEvictedCount() {
+        return evictedCount.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "CounterBuffer{adds=" + getAddCount() + ", flushes=" + getFlushCount()
+                 + ", commands=" + getFlushedCommandCount() + ", failed=" + getFailedFlushCount()
+                + ", evicted=" + getEvictedCount() + ", keys=" + counters.size() + ", hashes=" + hashCounters.size() + "}";
+    }
+
+    // =============================内部实现============================
+
+    private void added() {
+        addCount.increment();
+        pending.increment();
+        if (ThreadLocalRandom.current().nextInt(CHECK_EVERY) == 0 && pending.sum() >= maxPending
+                && flushRequested.compareAndSet(false, true)) {
+            try {
+                scheduler.execute(this::flushQuietly);
+            } catch (RuntimeException e) {
+                // 已关闭
+                flushRequested.set(false);
+            }
+        }
+    }
+
+    /**
+     * 写入成功后调用：上一轮移除的计数器已最后写入一次，丢弃；上一轮起没有写入且增量为0的计数器移除，留到下一轮
+     */
+    private void evictIdle() {
+        retiredLongs = new ArrayList<>();
+        retiredHashes = new ArrayList<>();
+        for (Map.Entry<String, LongCounter> entry : counters.entrySet()) {
+            LongCounter counter = entry.getValue();
+            if (counter.pending.sum() != 0) {
+                continue;
+            }
+            if (!counter.idle) {
+                counter.idle = true;
+            } else if (counters.remove(entry.getKey(), counter)) {
+                retiredLongs.add(new RetiredLong(entry.getKey(), counter));
+                evictedCount.increment();
+            }
+        }
+        for (Map.Entry<String, ConcurrentMap<String, DoubleCounter>> hash : hashCounters.entrySet()) {
+            ConcurrentMap<String, DoubleCounter> items = hash.getValue();
+            Map<String, DoubleCounter> removed = new HashMap<>();
+            for (Map.Entry<String, DoubleCounter> entry : items.entrySet()) {
+                DoubleCounter counter = entry.getValue();
+                if (Math.abs(counter.pending.sum()) >= DOUBLE_EPSILON) {
+                    continue;
+                }
+                if (!counter.idle) {
+                    counter.idle = true;
+                } else if (items.remove(entry.getKey(), counter)) {
+                    removed.put(entry.getKey(), counter);
+                    evictedCount.increment();
+                }
+            }
+            if (!removed.isEmpty()) {
+                retiredHashes.add(new RetiredHash(hash.getKey(), removed));
+            }
+            // 移除后其他线程仍可能向这个项表加入新的项，整个表留到下一轮
+            if (items.isEmpty() && hashCounters.remove(hash.getKey(), items)) {
+                retiredHashes.add(new RetiredHash(hash.getKey(), items));
+            }
+        }
+    }
+
+    private void flushQuietly() {
+        flushRequested.set(false);
+        try {
+            flush();
+        } catch (Exception e) {
+            errorReporter.log("flushCounters", null, e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static RedisSerializer<String> serializer(RedisSerializer<?> serializer) {
+        return (RedisSerializer<String>) serializer;
+    }
+
+    private static final class LongCounter {
+
+        final LongAdder pending = new LongAdder();
+
+        /**
+         * 最近一次写入后redis返回的值
+         */
+        volatile long flushed;
+
+        /**
+         * 上一轮没有写入，只在flush中访问
+         */
+        boolean idle;
+    }
+
+    private static final class DoubleCounter {
+
+        final DoubleAdder pending = new DoubleAdder();
+
+        volatile double flushed;
+
+        boolean idle;
+    }
+
+    private static final class RetiredLong {
+
+        final String key;
+
+        final LongCounter counter;
+
+        RetiredLong(String key, LongCounter counter) {
+            this.key = key;
+            this.counter = counter;
+        }
+    }
+
+    private static final class RetiredHash {
+
+        final String key;
+
+        final Map<String, DoubleCounter> items;
+
+        RetiredHash(String key, Map<String, DoubleCounter> items) {
+            this.key = key;
+            this.items = items;
+        }
+    }
+}
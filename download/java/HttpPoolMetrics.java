@@ -0,0 +1,57 @@
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * HTTP连接池统计
+ * <p>
+ * leased 已借出，pending 等待借连接的请求数，available 空闲可复用，max 上限；直接读取连接池，不额外计数
+ *
+ * @author Colin.Ye
+ * @version 1.0
+ * @ClassName HttpPoolMetrics
+ * @date 2019/7/31
+ **/
+public class HttpPoolMetrics {
+
+    private final PoolingHttpClientConnectionManager connectionManager;
+
+    public HttpPoolMetrics(PoolingHttpClientConnectionManager connectionManager) {
+        this.connectionManager = connectionManager;
+    }
+
+    public PoolStats getTotal() {
+        return connectionManager.getTotalStats();
+    }
+
+    public int getLeased() {
+        return getTotal().getLeased();
+    }
+
+    public int getPending() {
+        return getTotal().getPending();
+    }
+
+    public int getAvailable() {
+        return getTotal().getAvailable();
+    }
+
+    /**
+     * @return 每个路由的统计，key如"https://api.example.com:443"
+     */
+    public Map<String, PoolStats> getRoutes() {
+        Map<String, PoolStats> routes = new LinkedHashMap<>();
+        for (HttpRoute route : connectionManager.getRoutes()) {
+            routes.put(route.getTargetHost().toURI(), connectionManager.getStats(route));
+        }
+        return routes;
+    }
+
+    @Override
+    public String toString() {
+        return "HttpPoolMetrics{total=" + getTotal() + ", routes=" + getRoutes() + "}";
+    }
+}
@@ -0,0 +1,399 @@
+import com.isoftstone.hgy.utils.redis.NearCache;
+import com.isoftstone.hgy.utils.redis.RedisOperationException;
+import com.isoftstone.hgy.utils.redis.RedisUtil;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.util.DigestUtils;
+import org.springframework.util.StreamUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * GET请求响应缓存，作为RestTemplate拦截器使用，RestTemplateUtils的GET方法自动经过
+ * <p>
+ * 按最终URL及指定请求头区分缓存；遵循响应的Cache-Control: max-age(或Expires)，新鲜期内直接返回，
+ * 过期后带If-None-Match/If-Modified-Since回源，304时沿用缓存的响应体。no-store及非200响应不缓存。
+ * 本地用NearCache按容量淘汰，可选再写一份到redis供其他节点使用；redis读写失败时按未缓存处理，不影响请求
+ *
+ * @author Colin.Ye
+ * @version 1.0
+ * @ClassName HttpResponseCache
+ * @date 2019/7/31
+ **/
+public class HttpResponseCache implements ClientHttpRequestInterceptor {
+
+    private static final String KEY_PREFIX = "http-cache:";
+
+    private final NearCache memory;
+
+    /**
+     * 为null时只使用本地缓存
+     */
+    private final RedisUtil redisUtil;
+
+    private final String[] varyHeaders;
+
+    private final long staleRetentionMillis;
+
+    private final int maxBodySize;
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder revalidatedCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+
+    /**
+     * @param maximumSize           本地最多缓存的响应数量
+     * @param memoryTtlSeconds      本地最长保存时间(秒)
+     * @param staleRetentionSeconds 带ETag/Last-Modified的响应过期后继续保留用于校验的时间(秒)
+     * @param maxBodySize           超过该字节数的响应不缓存
+     * @param varyHeaders           参与区分缓存的请求头，如Authorization、Accept-Language
+     * @param redisUtil             redis缓存，可以为null
+     */
+    public HttpResponseCache(int maximumSize, long memoryTtlSeconds, long staleRetentionSeconds, int maxBodySize,
+                             String[] varyHeaders, RedisUtil redisUtil) {
+        this.memory = new NearCache(maximumSize, memoryTtlSeconds);
+        this.staleRetentionMillis = TimeUnit.SECONDS.toMillis(staleRetentionSeconds);
+        this.maxBodySize = maxBodySize;
+        this.varyHeaders = varyHeaders;
+        this.redisUtil = redisUtil;
+    }
+
+    @Override
+    public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution) throws IOException {
+        if (request.getMethod() != HttpMethod.GET) {
+            return execution.execute(request, body);
+        }
+        String key = key(request);
+        long generation = memory.generation(key);
+        Entry cached = lookup(key, generation);
+        if (cached != null && cached.freshUntil > System.currentTimeMillis()) {
+            hitCount.increment();
+            return cached.toResponse();
+        }
+        if (cached != null) {
+            HttpHeaders cachedHeaders = cached.headers();
+            if (cachedHeaders.getETag() != null) {
+                request.getHeaders().set(HttpHeaders.IF_NONE_MATCH, cachedHeaders.getETag());
+            }
+            if (cachedHeaders.getFirst(HttpHeaders.LAST_MODIFIED) != null) {
+                request.getHeaders().set(HttpHeaders.IF_MODIFIED_SINCE, cachedHeaders.getFirst(HttpHeaders.LAST_MODIFIED));
+            }
+        }
+
+        ClientHttpResponse response = execution.execute(request, body);
+        if (cached != null && response.getRawStatusCode() == HttpStatus.NOT_MODIFIED.value()) {
+            // 304只更新响应头及新鲜期，响应体沿用缓存
+            HttpHeaders headers = cached.headers();
+            response.getHeaders().forEach((name, values) -> {
+                if (!HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name)) {
+                    headers.put(name, values);
+                }
+            });
+            response.close();
+            revalidatedCount.increment();
+            Entry refreshed = new Entry(cached.status, headers, cached.body, System.currentTimeMillis());
+            store(key, refreshed, generation);
+            return refreshed.toResponse();
+        }
+        missCount.increment();
+        if (response.getRawStatusCode() != HttpStatus.OK.value() || !cacheable(response.getHeaders())
+                || response.getHeaders().getContentLength() > maxBodySize) {
+            return response;
+        }
+        // 没有Content-Length(chunked)时最多读maxBodySize + 1字节，超出说明不可缓存，已读部分与剩余部分拼接后原样返回
+        byte[] bytes;
+        try {
+            bytes = readAtMost(response.getBody(), (long) maxBodySize + 1);
+        } catch (IOException | RuntimeException e) {
+            response.close();
+            throw e;
+        }
+        if (bytes.length > maxBodySize) {
+            return new PrefixedResponse(response, bytes);
+        }
+        response.close();
+        Entry entry = new Entry(response.getRawStatusCode(), response.getHeaders(), bytes, System.currentTimeMillis());
+        store(key, entry, generation);
+        return entry.toResponse();
+    }
+
+    /**
+     * 清空本地缓存，redis中的缓存按过期时间自然淘汰
+     */
+    public void invalidateAll() {
+        memory.invalidateAll();
+    }
+
+    // =============================统计============================
+
+    /**
+     * @return 新鲜期内直接返回的次数
+     */
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    /**
+     * @return 回源校验后返回304、沿用缓存响应体的次数
+     */
+    public long getRevalidatedCount() {
+        return revalidatedCount.sum();
+    }
+
+    /**
+     * @return 回源取得完整响应的次数
+     */
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    /**
+     * @return 命中率(不含304) 没有请求时返回0
+     */
+    public double getHitRate() {
+        long hits = getHitCount();
+        long total = hits + getRevalidatedCount() + getMissCount();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    @Override
+    public String toString() {
+        return "HttpResponseCache{hits=" + getHitCount() + ", revalidated=" + getRevalidatedCount()
+                + ", misses=" + getMissCount() + ", memory=" + memory + "}";
+    }
+
+    // =============================内部实现============================
+
+    /**
+     * 请求头的值可能包含令牌，摘要后再作为key的一部分
+     */
+    private String key(HttpRequest request) {
+        StringBuilder vary = new StringBuilder();
+        for (String name : varyHeaders) {
+            List<String> values = request.getHeaders().get(name);
+            if (values != null) {
+                vary.append(name.toLowerCase()).append('=').append(values).append('\n');
+            }
+        }
+        String uri = request.getURI().toString();
+        return vary.length() == 0 ? KEY_PREFIX + uri
+                : KEY_PREFIX + uri + '#' + DigestUtils.md5DigestAsHex(vary.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private Entry lookup(String key, long generation) {
+        Entry entry = (Entry) memory.get(key);
+        if (entry != null || redisUtil == null) {
+            return entry;
+        }
+        try {
+            entry = (Entry) redisUtil.get(key);
+        } catch (RuntimeException e) {
+            redisUtil.getErrorReporter().log("httpCacheGet", key, e);
+            return null;
+        }
+        long retention = entry == null ? 0 : entry.retentionMillis(staleRetentionMillis);
+        if (retention > 0) {
+            memory.put(key, entry, retention, generation);
+        }
+        return entry;
+    }
+
+    private void store(String key, Entry entry, long generation) {
+        long retention = entry.retentionMillis(staleRetentionMillis);
+        if (retention <= 0) {
+            return;
+        }
+        memory.put(key, entry, retention, generation);
+        if (redisUtil != null) {
+            try {
+                redisUtil.set(key, entry, Math.max(1, TimeUnit.MILLISECONDS.toSeconds(retention)));
+            } catch (RedisOperationException e) {
+                // redis.errors.propagate=true时抛出，RedisUtil已上报
+            }
+        }
+    }
+
+    private static byte[] readAtMost(InputStream in, long limit) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[StreamUtils.BUFFER_SIZE];
+        long remaining = limit;
+        int n;
+        while (remaining > 0 && (n = in.read(buffer, 0, (int) Math.min(buffer.length, remaining))) != -1) {
+            out.write(buffer, 0, n);
+            remaining -= n;
+        }
+        return out.toByteArray();
+    }
+
+    private static boolean cacheable(HttpHeaders headers) {
+        String cacheControl = headers.getCacheControl();
+        return cacheControl == null || !cacheControl.toLowerCase().contains("no-store");
+    }
+
+    /**
+     * 新鲜期(毫秒)：Cache-Control的no-cache为0，其次max-age减去Age，再次Expires减去Date
+     */
+    private static long freshnessMillis(HttpHeaders headers) {
+        String cacheControl = headers.getCacheControl();
+        if (cacheControl != null) {
+            for (String directive : cacheControl.toLowerCase().split(",")) {
+                directive = directive.trim();
+                if (directive.equals("no-cache")) {
+                    return 0;
+                }
+                if (directive.startsWith("max-age=")) {
+                    try {
+                        long maxAge = Long.parseLong(directive.substring("max-age=".length()).trim());
+                        String age = headers.getFirst("Age");
+                        return TimeUnit.SECONDS.toMillis(maxAge - (age == null ? 0 : Long.parseLong(age.trim())));
+                    } catch (NumberFormatException e) {
+                        return 0;
+                    }
+                }
+            }
+        }
+        long expires = headers.getExpires();
+        if (expires > 0) {
+            long date = headers.getDate();
+            return expires - (date > 0 ? date : System.currentTimeMillis());
+        }
+        return 0;
+    }
+
+    /**
+     * 缓存的响应，写入redis时使用value序列化方式；CacheControl等Spring对象不直接保存，只保存原始响应头。
+     * 不能声明为final：jackson的NON_FINAL默认类型不为final类写入类型信息，redis中的值无法读回
+     */
+    static class Entry {
+
+        private int status;
+
+        private Map<String, List<String>> headers;
+
+        private byte[] body;
+
+        private long freshUntil;
+
+        private Entry() {
+        }
+
+        Entry(int status, HttpHeaders headers, byte[] body, long now) {
+            this.status = status;
+            this.headers = new LinkedHashMap<>();
+            headers.forEach((name, values) -> this.headers.put(name, new ArrayList<>(values)));
+            this.body = body;
+            this.freshUntil = now + Math.max(0, freshnessMillis(headers));
+        }
+
+        HttpHeaders headers() {
+            HttpHeaders copy = new HttpHeaders();
+            headers.forEach((name, values) -> copy.put(name, new ArrayList<>(values)));
+            return copy;
+        }
+
+        /**
+         * 新鲜期之后，有校验字段的响应再保留staleRetentionMillis用于条件请求，否则不保留
+         */
+        long retentionMillis(long staleRetentionMillis) {
+            long fresh = freshUntil - System.currentTimeMillis();
+            HttpHeaders headers = headers();
+            boolean validatable = headers.getETag() != null || headers.getFirst(HttpHeaders.LAST_MODIFIED) != null;
+            return validatable ? Math.max(0, fresh) + staleRetentionMillis : fresh;
+        }
+
+        ClientHttpResponse toResponse() {
+            HttpHeaders responseHeaders = headers();
+            return new ClientHttpResponse() {
+                @Override
+                public HttpStatus getStatusCode() {
+                    return HttpStatus.valueOf(status);
+                }
+
+                @Override
+                public int getRawStatusCode() {
+                    return status;
+                }
+
+                @Override
+                public String getStatusText() {
+                    return getStatusCode().getReasonPhrase();
+                }
+
+                @Override
+                public HttpHeaders getHeaders() {
+                    return responseHeaders;
+                }
+
+                @Override
+                public InputStream getBody() {
+                    return new ByteArrayInputStream(body);
+                }
+
+                @Override
+                public void close() {
+                }
+            };
+        }
+    }
+
+    /**
+     * 响应体超过maxBodySize时返回：先读出已缓冲的部分，再继续读原响应，关闭时关闭原响应
+     */
+    private static final class PrefixedResponse implements ClientHttpResponse {
+
+        private final ClientHttpResponse response;
+
+        private final byte[] prefix;
+
+        PrefixedResponse(ClientHttpResponse response, byte[] prefix) {
+            this.response = response;
+            this.prefix = prefix;
+        }
+
+        @Override
+        public HttpStatus getStatusCode() throws IOException {
+            return response.getStatusCode();
+        }
+
+        @Override
+        public int getRawStatusCode() throws IOException {
+            return response.getRawStatusCode();
+        }
+
+        @Override
+        public String getStatusText() throws IOException {
+            return response.getStatusText();
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return response.getHeaders();
+        }
+
+        @Override
+        public InputStream getBody() throws IOException {
+            return new SequenceInputStream(new ByteArrayInputStream(prefix), response.getBody());
+        }
+
+        @Override
+        public void close() {
+            response.close();
+        }
+    }
+}
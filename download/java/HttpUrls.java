@@ -0,0 +1,195 @@
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.net.URI;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * RestTemplateUtils、ReactiveHttpUtils的URL拼接
+ * <p>
+ * 参数按UTF-8百分号编码后写入线程复用的StringBuilder，不使用正则；基础URL编码一次后缓存。
+ * 返回URI，RestTemplate/WebClient不再按URI模板解析和编码，参数值中的&、=、{}等字符原样送达服务端
+ *
+ * @author Colin.Ye
+ * @version 1.0
+ * @ClassName HttpUrls
+ * @date 2019/7/31
+ **/
+public final class HttpUrls {
+
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    /**
+     * 缓存的基础URL数量上限，超出时整体清空
+     */
+    private static final int MAX_CACHED_BASES = 1024;
+
+    /**
+     * 超过该长度的缓冲区用完即丢，不常驻线程
+     */
+    private static final int MAX_CACHED_BUFFER = 8 * 1024;
+
+    /**
+     * 原始URL -> 编码后的URL，只编码非法字符，与RestTemplate处理字符串URL的方式一致
+     */
+    private static final ConcurrentMap<String, String> BASES = new ConcurrentHashMap<>();
+
+    private static final ThreadLocal<StringBuilder> BUFFER = ThreadLocal.withInitial(() -> new StringBuilder(256));
+
+    private HttpUrls() {
+    }
+
+    /**
+     * ?号参数，url中已有?时以&追加
+     *
+     * @param url    基础URL
+     * @param params 参数 可以为null
+     * @return URI
+     */
+    public static URI traditional(String url, Map<?, ?> params) {
+        String base = base(url);
+        if (params == null || params.isEmpty()) {
+            return URI.create(base);
+        }
+        StringBuilder sb = buffer(base);
+        int query = base.indexOf('?');
+        if (query < 0) {
+            sb.append('?');
+        } else if (query != base.length() - 1 && base.charAt(base.length() - 1) != '&') {
+            sb.append('&');
+        }
+        boolean first = true;
+        for (Map.Entry<?, ?> entry : params.entrySet()) {
+            if (!first) {
+                sb.append('&');
+            }
+            first = false;
+            appendEncoded(sb, entry.getKey(), false);
+            sb.append('=');
+            appendEncoded(sb, entry.getValue(), false);
+        }
+        return release(sb);
+    }
+
+    /**
+     * 分隔符参数，每个参数作为一段路径追加，参数中的/保留为路径分隔
+     *
+     * @param url    基础URL
+     * @param params 参数 可以为null
+     * @return URI
+     */
+    public static URI placeholder(String url, List<?> params) {
+        String base = base(url);
+        if (params == null || params.isEmpty()) {
+            return URI.create(base);
+        }
+        StringBuilder sb = buffer(base);
+        for (Object param : params) {
+            sb.append('/');
+            appendEncoded(sb, param, true);
+        }
+        return release(sb);
+    }
+
+    // =============================内部实现============================
+
+    private static String base(String url) {
+        String base = BASES.get(url);
+        if (base == null) {
+            if (BASES.size() >= MAX_CACHED_BASES) {
+                BASES.clear();
+            }
+            base = UriComponentsBuilder.fromUriString(url).build().encode().toUriString();
+            BASES.put(url, base);
+        }
+        return base;
+    }
+
+    private static StringBuilder buffer(String base) {
+        StringBuilder sb = BUFFER.get();
+        sb.setLength(0);
+        return sb.append(base);
+    }
+
+    private static URI release(StringBuilder sb) {
+        URI uri = URI.create(sb.toString());
+        if (sb.capacity() > MAX_CACHED_BUFFER) {
+            BUFFER.remove();
+        }
+        return uri;
+    }
+
+    /**
+     * 整数直接写入；其他按String.valueOf后逐字符编码，null写为"null"与原实现一致
+     */
+    private static void appendEncoded(StringBuilder sb, Object value, boolean path) {
+        if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+            sb.append(((Number) value).longValue());
+            return;
+        }
+        String s = String.valueOf(value);
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (isUnreserved(c) || (path && isPathChar(c))) {
+                sb.append(c);
+            } else if (c < 0x80) {
+                appendByte(sb, c);
+            } else if (c < 0x800) {
+                appendByte(sb, 0xC0 | (c >> 6));
+                appendByte(sb, 0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, s.charAt(++i));
+                appendByte(sb, 0xF0 | (cp >> 18));
+                appendByte(sb, 0x80 | ((cp >> 12) & 0x3F));
+                appendByte(sb, 0x80 | ((cp >> 6) & 0x3F));
+                appendByte(sb, 0x80 | (cp & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                // 不成对的代理字符按'?'处理，与String.getBytes(UTF_8)一致
+                appendByte(sb, '?');
+            } else {
+                appendByte(sb, 0xE0 | (c >> 12));
+                appendByte(sb, 0x80 | ((c >> 6) & 0x3F));
+                appendByte(sb, 0x80 | (c & 0x3F));
+            }
+        }
+    }
+
+    private static void appendByte(StringBuilder sb, int b) {
+        sb.append('%').append(HEX[(b >> 4) & 0xF]).append(HEX[b & 0xF]);
+    }
+
+    /**
+     * RFC 3986 unreserved
+     */
+    private static boolean isUnreserved(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                || c == '-' || c == '.' || c == '_' || c == '~';
+    }
+
+    /**
+     * 路径中可以不编码的sub-delims及: @ /
+     */
+    private static boolean isPathChar(char c) {
+        switch (c) {
+            case '!':
+            case '$':
+            case '&':
+            case '\'':
+            case '(':
+            case ')':
+            case '*':
+            case '+':
+            case ',':
+            case ';':
+            case '=':
+            case ':':
+            case '@':
+            case '/':
+                return true;
+            default:
+                return false;
+        }
+    }
+}
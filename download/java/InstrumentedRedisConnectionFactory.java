@@ -0,0 +1,151 @@
+package com.isoftstone.hgy.utils.redis;
+
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.RedisClusterConnection;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisSentinelConnection;
+import org.springframework.util.ClassUtils;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * 为redisTemplate取得的连接记录命令统计，RedisUtil的所有方法都经过这里
+ * <p>
+ * 连接方法名即命令，第一个byte[]参数(或byte[][]的第一个元素)为key，参数与结果中的byte[]计入字节数。
+ * 管道及事务中的命令只是入队，不单独记录，整批耗时记在closePipeline/exec上
+ *
+ * @author Colin.Ye
+ * @version 1.0
+ * @ClassName InstrumentedRedisConnectionFactory
+ * @date 2019/8/22
+ **/
+public class InstrumentedRedisConnectionFactory implements RedisConnectionFactory {
+
+    /**
+     * 连接管理方法，不是redis命令
+     */
+    private static final Set<String> NOT_COMMANDS = new HashSet<>(Arrays.asList(
+            "close", "isClosed", "getNativeConnection", "isQueueing", "isPipelined", "openPipeline",
+            "getSentinelConnection", "isSubscribed", "getSubscription", "equals", "hashCode", "toString"));
+
+    /**
+     * 管道/事务结束，记录整批耗时
+     */
+    private static final Set<String> PIPELINE_END = new HashSet<>(Arrays.asList("closePipeline", "exec"));
+
+    private final RedisConnectionFactory delegate;
+
+    private final RedisCommandMetrics metrics;
+
+    public InstrumentedRedisConnectionFactory(RedisConnectionFactory delegate, RedisCommandMetrics metrics) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public RedisConnection getConnection() {
+        return wrap(delegate.getConnection());
+    }
+
+    @Override
+    public RedisClusterConnection getClusterConnection() {
+        return wrap(delegate.getClusterConnection());
+    }
+
+    @Override
+    public boolean getConvertPipelineAndTxResults() {
+        return delegate.getConvertPipelineAndTxResults();
+    }
+
+    @Override
+    public RedisSentinelConnection getSentinelConnection() {
+        return delegate.getSentinelConnection();
+    }
+
+    @Override
+    public DataAccessException translateExceptionIfPossible(RuntimeException ex) {
+        return delegate.translateExceptionIfPossible(ex);
+    }
+
+    public RedisConnectionFactory getDelegate() {
+        return delegate;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T extends RedisConnection> T wrap(T target) {
+        Class<?>[] interfaces = ClassUtils.getAllInterfacesForClass(target.getClass(), getClass().getClassLoader());
+        return (T) Proxy.newProxyInstance(getClass().getClassLoader(), interfaces, new Handler(target, target));
+    }
+
+    private final class Handler implements InvocationHandler {
+
+        private final Object target;
+
+        /**
+         * 用于判断是否处于管道/事务中
+         */
+        private final RedisConnection connection;
+
+        Handler(Object target, RedisConnection connection) {
+            this.target = target;
+            this.connection = connection;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (NOT_COMMANDS.contains(name)) {
+                return invokeTarget(method, args);
+            }
+            if (args == null && name.endsWith("Commands") && method.getReturnType().isInterface()) {
+                // keyCommands()、stringCommands()等返回的子接口同样记录
+                Object commands = invokeTarget(method, null);
+                return commands == null ? null : Proxy.newProxyInstance(getClass().getClassLoader(),
+                        new Class<?>[]{method.getReturnType()}, new Handler(commands, connection));
+            }
+            if (!PIPELINE_END.contains(name) && (connection.isPipelined() || connection.isQueueing())) {
+                return invokeTarget(method, args);
+            }
+            Object key = key(args);
+            long start = metrics.start();
+            Object result;
+            try {
+                result = invokeTarget(method, args);
+            } catch (Throwable e) {
+                metrics.recordError(name, key, start, e);
+                throw e;
+            }
+            metrics.record(name, key, start, new Object[]{args, result});
+            return result;
+        }
+
+        private Object invokeTarget(Method method, Object[] args) throws Throwable {
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getTargetException();
+            }
+        }
+    }
+
+    private static Object key(Object[] args) {
+        if (args == null || args.length == 0) {
+            return null;
+        }
+        Object first = args[0];
+        if (first instanceof byte[]) {
+            return first;
+        }
+        if (first instanceof byte[][] && ((byte[][]) first).length > 0) {
+            return ((byte[][]) first)[0];
+        }
+        return null;
+    }
+}
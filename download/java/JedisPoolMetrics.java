@@ -0,0 +1,117 @@
+package com.isoftstone.ismart.analysis.util;
+
+import redis.clients.jedis.ShardedJedisPool;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Jedis连接池统计
+ * <p>
+ * 活跃/空闲/等待数直接读取连接池，借连接等待时间按固定区间计数
+ *
+ * @author Colin.Ye
+ * @version 1.0
+ * @ClassName JedisPoolMetrics
+ * @date 2018/1/12
+ **/
+public class JedisPoolMetrics {
+
+    /**
+     * 等待时间区间上限(毫秒)，最后一个区间为超过1000毫秒
+     */
+    private static final long[] WAIT_BOUNDS_MILLIS = {1, 5, 10, 50, 100, 500, 1000};
+
+    private final ShardedJedisPool pool;
+
+    private final LongAdder[] waitBuckets = new LongAdder[WAIT_BOUNDS_MILLIS.length + 1];
+
+    private final LongAdder borrowCount = new LongAdder();
+    private final LongAdder exhaustedCount = new LongAdder();
+    private final LongAdder failedCount = new LongAdder();
+
+    public JedisPoolMetrics(ShardedJedisPool pool) {
+        this.pool = pool;
+        for (int i = 0; i < waitBuckets.length; i++) {
+            waitBuckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * 记录一次成功借出连接
+     *
+     * @param waitNanos 等待时间(纳秒)
+     */
+    void recordBorrow(long waitNanos) {
+        borrowCount.increment();
+        long millis = TimeUnit.NANOSECONDS.toMillis(waitNanos);
+        int i = 0;
+        while (i < WAIT_BOUNDS_MILLIS.length && millis > WAIT_BOUNDS_MILLIS[i]) {
+            i++;
+        }
+        waitBuckets[i].increment();
+    }
+
+    /**
+     * 记录一次等待超时(连接池耗尽)
+     */
+    void recordExhausted() {
+        exhaustedCount.increment();
+    }
+
+    /**
+     * 记录一次建立连接失败
+     */
+    void recordFailure() {
+        failedCount.increment();
+    }
+
+    public int getActive() {
+        return pool.getNumActive();
+    }
+
+    public int getIdle() {
+        return pool.getNumIdle();
+    }
+
+    public int getWaiters() {
+        return pool.getNumWaiters();
+    }
+
+    public long getBorrowCount() {
+        return borrowCount.sum();
+    }
+
+    public long getExhaustedCount() {
+        return exhaustedCount.sum();
+    }
+
+    public long getFailedCount() {
+        return failedCount.sum();
+    }
+
+    public long getMaxBorrowWaitMillis() {
+        return pool.getMaxBorrowWaitTimeMillis();
+    }
+
+    /**
+     * @return 等待时间分布，key为区间(如"<=5ms")，value为次数
+     */
+    public Map<String, Long> getWaitHistogram() {
+        Map<String, Long> histogram = new LinkedHashMap<>();
+        for (int i = 0; i < WAIT_BOUNDS_MILLIS.length; i++) {
+            histogram.put("<=" + WAIT_BOUNDS_MILLIS[i] + "ms", waitBuckets[i].sum());
+        }
+        histogram.put(">" + WAIT_BOUNDS_MILLIS[WAIT_BOUNDS_MILLIS.length - 1] + "ms", waitBuckets[WAIT_BOUNDS_MILLIS.length].sum());
+        return histogram;
+    }
+
+    @Override
+    public String toString() {
+        return "JedisPoolMetrics{active=" + getActive() + ", idle=" + getIdle() + ", waiters=" + getWaiters()
+                + ", borrowed=" + getBorrowCount() + ", exhausted=" + getExhaustedCount() + ", failed=" + getFailedCount()
+                + ", wait=" + getWaitHistogram() + "}";
+    }
+}
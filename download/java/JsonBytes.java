@@ -0,0 +1,38 @@
+package com.isoftstone.ismart.analysis.util;
+
+import com.alibaba.fastjson.JSON;
+
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 从UTF-8字节直接解析JSON
+ * <p>
+ * 使用JSON.parseObject(byte[], off, len, Charset, Type)：fastjson把字节解码到线程复用的char[]，
+ * 再生成一个String交给解析器。不要改回自行构造JSONReaderScanner(char[], len, ...)省掉这个String，
+ * 1.2.58在字符串跨过其内部缓冲区边界时报not close json text，长字符串字段(约16K字符以上)的合法JSON解析失败
+ *
+ * @author Colin.Ye
+ * @version 1.0
+ * @ClassName JsonBytes
+ * @date 2018/1/12
+ **/
+public final class JsonBytes {
+
+    private JsonBytes() {
+    }
+
+    /**
+     * 解析JSON
+     *
+     * @param bytes UTF-8编码的JSON 为null时返回null
+     * @param type  目标类型
+     * @return 对象
+     */
+    public static <T> T parseObject(byte[] bytes, Type type) {
+        if (bytes == null) {
+            return null;
+        }
+        return JSON.parseObject(bytes, 0, bytes.length, StandardCharsets.UTF_8, type);
+    }
+}
@@ -0,0 +1,391 @@
+package com.isoftstone.ismart.analysis.util;
+
+import com.isoftstone.hgy.utils.redis.SingleFlight;
+import redis.clients.jedis.Tuple;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 基于LowRedisUtil有序集合的排行榜，分数为double
+ * <p>
+ * incr的增量按成员在本地合并，每flushInterval毫秒或待写成员数达到maxPending时，以管道批量ZINCRBY写入(LowRedisUtil.zincrbyAll)，
+ * close时再写一次；写入失败时增量合并回本地，下次重试。incrAll直接批量写入。
+ * <p>
+ * top(n)用ZREVRANGE ... WITHSCORES只取前n名，结果在本地缓存topCacheTtl毫秒，缓存的名次数不小于n时直接截取；
+ * 并发未命中合并为一次查询。rank用同一管道发送ZREVRANK、ZSCORE。
+ * 查询结果不含本地未写入的增量，top最多滞后topCacheTtl + flushInterval
+ *
+ * @author Colin.Ye
+ * @version 1.0
+ * @ClassName Leaderboard
+ * @date 2019/8/22
+ **/
+public class Leaderboard implements AutoCloseable {
+
+    private final LowRedisUtil lowRedisUtil;
+
+    private final String key;
+
+    private final long topCacheTtlNanos;
+
+    private final int maxPending;
+
+    private final ConcurrentMap<String, Double> pending = new ConcurrentHashMap<>();
+
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+
+    private final ScheduledExecutorService scheduler;
+
+    private final SingleFlight topFlight = new SingleFlight();
+
+    private volatile TopCache topCache;
+
+    private final LongAdder incrCount = new LongAdder();
+    private final LongAdder flushCount = new LongAdder();
+    private final LongAdder flushedMemberCount = new LongAdder();
+    private final LongAdder failedFlushCount = new LongAdder();
+    private final LongAdder topHitCount = new LongAdder();
+    private final LongAdder topMissCount = new LongAdder();
+
+    private volatile boolean closed;
+
+    /**
+     * 默认top缓存1秒，每秒写入，待写成员达到10000时提前写入
+     *
+     * @param lowRedisUtil redis工具类
+     * @param key          有序集合的key
+     */
+    public Leaderboard(LowRedisUtil lowRedisUtil, String key) {
+        this(lowRedisUtil, key, 1000, 1000, 10000);
+    }
+
+    /**
+     * @param lowRedisUtil    redis工具类
+     * @param key             有序集合的key
+     * @param topCacheTtlMs   top结果本地缓存时间(毫秒)，0为不缓存
+     * @param flushIntervalMs incr增量定期写入间隔(毫秒)
+     * @param maxPending      待写成员数达到该值时提前写入
+     */
+    public Leaderboard(LowRedisUtil lowRedisUtil, String key, long topCacheTtlMs, long flushIntervalMs, int maxPending) {
+        this.lowRedisUtil = lowRedisUtil;
+        this.key = key;
+        this.topCacheTtlNanos = TimeUnit.MILLISECONDS.toNanos(topCacheTtlMs);
+        this.maxPending = maxPending;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "redis-leaderboard-" + key);
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    // =============================写入============================
+
+    /**
+     * 累加成员分数，增量先在本地合并，稍后批量写入
+     *
+     * @param member 成员
+     * @param delta  增量 可以为负、小数
+     */
+    public void incr(String member, double delta) {
+        if (closed) {
+            lowRedisUtil.zincrbyDouble(key, delta, member);
+            return;
+        }
+        pending.merge(member, delta, Double::sum);
+        incrCount.increment();
+        if (pending.size() >= maxPending && flushRequested.compareAndSet(false, true)) {
+            try {
+                scheduler.execute(this::flushQuietly);
+            } catch (RuntimeException e) {
+                // 已关闭
+                flushRequested.set(false);
+            }
+        }
+    }
+
+    /**
+     * 立即批量累加，不经过本地合并
+     *
+     * @param increments 成员及增量
+     * @return
+     */
+    public boolean incrAll(Map<String, Double> increments) {
+        return lowRedisUtil.zincrbyAll(key, increments);
+    }
+
+    /**
+     * 立即写入本地合并的增量
+     *
+     * @return 写入失败时返回false，增量保留到下次
+     */
+    public synchronized boolean flush() {
+        if (pending.isEmpty()) {
+            return true;
+        }
+        // 逐个移除，移除后到达的增量进入新的条目，不会丢失
+        Map<String, Double> increments = new HashMap<String, Double>(pending.size() * 2);
+        for (String member : pending.keySet()) {
+            Double delta = pending.remove(member);
+            if (delta != null && delta != 0) {
+                increments.put(member, delta);
+            }
+        }
+        if (increments.isEmpty()) {
+            return true;
+        }
+        boolean success;
+        try {
+            success = lowRedisUtil.zincrbyAll(key, increments);
+        } catch (RuntimeException e) {
+            restore(increments);
+            throw e;
+        }
+        if (!success) {
+            restore(increments);
+            return false;
+        }
+        flushCount.increment();
+        flushedMemberCount.add(increments.size());
+        return true;
+    }
+
+    // =============================查询============================
+
+    /**
+     * 前n名，按分数从高到低
+     *
+     * @param n 名次数
+     * @return 不可修改，排行榜人数不足n时返回全部；失败时返回空列表
+     */
+    public List<Entry> top(int n) {
+        if (n <= 0) {
+            // ZREVRANGE key 0 -1 会返回整个集合
+            return Collections.emptyList();
+        }
+        TopCache cache = topCache;
+        if (cache != null && cache.covers(n, System.nanoTime())) {
+            topHitCount.increment();
+            return cache.head(n);
+        }
+        topMissCount.increment();
+        return topFlight.execute(String.valueOf(n), () -> load(n)).head(n);
+    }
+
+    /**
+     * 成员的排名及分数
+     *
+     * @param member 成员
+     * @return 成员不存在时返回null
+     */
+    public Entry rank(String member) {
+        return lowRedisUtil.zrevrankWithScore(key, member);
+    }
+
+    /**
+     * @return 成员的分数，成员不存在时返回null
+     */
+    public Double score(String member) {
+        return lowRedisUtil.zscoreDouble(key, member);
+    }
+
+    /**
+     * @return 成员数
+     */
+    public long size() {
+        return lowRedisUtil.zcard(key);
+    }
+
+    /**
+     * 丢弃top缓存，下次查询redis
+     */
+    public void invalidate() {
+        topCache = null;
+    }
+
+    /**
+     * 停止定期写入，并写入剩余的增量；之后的incr直接写redis
+     */
+    @Override
+    public void close() {
+        closed = true;
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flushQuietly();
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    // =============================统计============================
+
+    /**
+     * @return incr调用次数
+     */
+    public long getIncrCount() {
+        return incrCount.sum();
+    }
+
+    /**
+     * @return 写入redis的批次数
+     */
+    public long getFlushCount() {
+        return flushCount.sum();
+    }
+
+    /**
+     * @return 写入redis的成员数(ZINCRBY条数)
+     */
+    public long getFlushedMemberCount() {
+        return flushedMemberCount.sum();
+    }
+
+    /**
+     * @return 写入失败的批次数
+     */
+    public long getFailedFlushCount() {
+        return failedFlushCount.sum();
+    }
+
+    /**
+     * @return top命中本地缓存的次数
+     */
+    public long getTopHitCount() {
+        return topHitCount.sum();
+    }
+
+    /**
+     * @return top查询redis的次数(合并前)
+     */
+    public long getTopMissCount() {
+        return topMissCount.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "Leaderboard{key=" + key + ", incrs=" + getIncrCount() + ", flushes=" + getFlushCount()
+                + ", members=" + getFlushedMemberCount() + ", failed=" + getFailedFlushCount()
+                + ", pending=" + pending.size() + ", topHits=" + getTopHitCount() + ", topMisses=" + getTopMissCount() + "}";
+    }
+
+    // =============================内部实现============================
+
+    private TopCache load(int n) {
+        // 与当前缓存取较大的名次数，不同n的查询共用一份缓存
+        TopCache previous = topCache;
+        int limit = previous == null ? n : Math.max(n, previous.limit);
+        Set<Tuple> tuples = lowRedisUtil.zrevrangeWithScores(key, 0, limit - 1);
+        if (tuples == null) {
+            return TopCache.EMPTY;
+        }
+        List<Entry> entries = new ArrayList<Entry>(tuples.size());
+        long rank = 0;
+        for (Tuple tuple : tuples) {
+            entries.add(new Entry(tuple.getElement(), tuple.getScore(), rank++));
+        }
+        TopCache cache = new TopCache(Collections.unmodifiableList(entries), limit, System.nanoTime() + topCacheTtlNanos);
+        if (topCacheTtlNanos > 0) {
+            topCache = cache;
+        }
+        return cache;
+    }
+
+    private void restore(Map<String, Double> increments) {
+        failedFlushCount.increment();
+        for (Map.Entry<String, Double> entry : increments.entrySet()) {
+            pending.merge(entry.getKey(), entry.getValue(), Double::sum);
+        }
+    }
+
+    private void flushQuietly() {
+        flushRequested.set(false);
+        try {
+            flush();
+        } catch (Exception e) {
+            lowRedisUtil.getErrorReporter().log("leaderboardFlush", key, e);
+        }
+    }
+
+    /**
+     * 排行榜条目
+     */
+    public static final class Entry {
+
+        private final String member;
+
+        private final double score;
+
+        private final long rank;
+
+        public Entry(String member, double score, long rank) {
+            this.member = member;
+            this.score = score;
+            this.rank = rank;
+        }
+
+        public String getMember() {
+            return member;
+        }
+
+        public double getScore() {
+            return score;
+        }
+
+        /**
+         * @return 按分数从高到低的排名，从0开始
+         */
+        public long getRank() {
+            return rank;
+        }
+
+        @Override
+        public String toString() {
+            return "Entry{member=" + member + ", score=" + score + ", rank=" + rank + "}";
+        }
+    }
+
+    private static final class TopCache {
+
+        static final TopCache EMPTY = new TopCache(Collections.<Entry>emptyList(), 0, 0);
+
+        final List<Entry> entries;
+
+        /**
+         * 查询的名次数，entries少于limit说明已是全部成员
+         */
+        final int limit;
+
+        final long expireAt;
+
+        TopCache(List<Entry> entries, int limit, long expireAt) {
+            this.entries = entries;
+            this.limit = limit;
+            this.expireAt = expireAt;
+        }
+
+        boolean covers(int n, long now) {
+            return now - expireAt < 0 && n <= limit;
+        }
+
+        List<Entry> head(int n) {
+            return n >= entries.size() ? entries : entries.subList(0, n);
+        }
+    }
+}
@@ -1,32 +1,49 @@
 package com.isoftstone.ismart.analysis.util;
 
 import com.alibaba.fastjson.JSON;
+import com.isoftstone.hgy.utils.redis.PagedIterator;
+import com.isoftstone.hgy.utils.redis.RedisCommandMetrics;
+import com.isoftstone.hgy.utils.redis.RedisErrorReporter;
+import com.isoftstone.hgy.utils.redis.RedisOperationException;
+import com.isoftstone.hgy.utils.redis.ValueCompressor;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import redis.clients.jedis.*;
+import redis.clients.util.Hashing;
+import redis.clients.util.Sharded;
 
 import javax.annotation.PostConstruct;
-import java.lang.reflect.Field;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
 
 /**
  * redis工具类
  *
  * @author Colin.Ye
  * @version 1.0
- * @ClassName RedisController
+ * @ClassName LowRedisUtil
  * @date 2018/1/12
  **/
 @Component
-public class RedisUtil {
+public class LowRedisUtil {
 
     final Logger logger = LoggerFactory.getLogger(getClass());
     /**
      * 数据源
      */
-    private ShardedJedisPool shardedJedisPool;
+    private volatile ShardedJedisPool shardedJedisPool;
 
     @Value("${datasource.redis.host}")
     private String host;
@@ -37,64 +54,274 @@ public class RedisUtil {
     private int db;
 
     /**
-     * 切换redis库
-     *
-     * @param jedis
+     * 连接池模式：single 单节点；sharded 按datasource.redis.nodes分片
      */
-    private void setDb(JedisShardInfo jedis) {
-        Class<? extends JedisShardInfo> clz = jedis.getClass();
-        Field declaredField = null;
-        try {
-            declaredField = clz.getDeclaredField("db");
-        } catch (NoSuchFieldException e) {
-            e.printStackTrace();
-        }
-        declaredField.setAccessible(true);
-        try {
-            declaredField.set(jedis, db);
-        } catch (IllegalAccessException e) {
-            e.printStackTrace();
-        }
-    }
+    @Value("${datasource.redis.pool.mode:single}")
+    private String poolMode;
+
+    /**
+     * 分片节点，格式 host:port[:weight],host:port[:weight]，按一致性hash分布，支持{...}标签
+     */
+    @Value("${datasource.redis.nodes:}")
+    private String[] nodes;
+
+    /**
+     * 新增节点迁移数据时每次SCAN的数量
+     */
+    @Value("${datasource.redis.migration.batch-size:500}")
+    private int migrationBatchSize;
+
+    /**
+     * 批量方法每批的数量，每批一次管道同步
+     */
+    @Value("${datasource.redis.batch-size:1000}")
+    private int batchSize;
+
+    /**
+     * 当前hash环上的节点
+     */
+    private List<JedisShardInfo> shards;
+
+    private JedisPoolConfig poolConfig;
+
+    @Value("${datasource.redis.pool.max-total:64}")
+    private int maxTotal;
+
+    @Value("${datasource.redis.pool.max-idle:64}")
+    private int maxIdle;
+
+    @Value("${datasource.redis.pool.min-idle:8}")
+    private int minIdle;
+
+    @Value("${datasource.redis.pool.max-wait-millis:2000}")
+    private long maxWaitMillis;
+
+    /**
+     * 启动时预先建立的连接数，默认与min-idle一致
+     */
+    @Value("${datasource.redis.pool.warm-up:-1}")
+    private int warmUp;
+
+    private volatile JedisPoolMetrics poolMetrics;
+
+    /**
+     * setJsonData写入的JSON超过该字节数时压缩，0为不压缩(仍可读取已压缩的数据)
+     */
+    @Value("${datasource.redis.compression.threshold:0}")
+    private int compressionThreshold;
+
+    /**
+     * 压缩预置字典文件路径，可以为空
+     */
+    @Value("${datasource.redis.compression.dictionary:}")
+    private String compressionDictionary;
+
+    /**
+     * 解压后最大字节数，压缩头部中的长度超过时视为数据损坏
+     */
+    @Value("${datasource.redis.compression.max-length:" + ValueCompressor.DEFAULT_MAX_LENGTH + "}")
+    private int compressionMaxLength;
+
+    private ValueCompressor valueCompressor;
+
+    /**
+     * 命令统计，存在MeterRegistry时按命令及key前缀记录耗时、字节数及异常
+     */
+    @Value("${datasource.redis.metrics.enabled:false}")
+    private boolean metricsEnabled;
+
+    @Value("${datasource.redis.metrics.prefix-delimiter::}")
+    private char metricsPrefixDelimiter;
+
+    @Value("${datasource.redis.metrics.max-prefixes:64}")
+    private int metricsMaxPrefixes;
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    /**
+     * 错误日志时间窗口(毫秒)，每种异常每个窗口最多记录log-per-interval条
+     */
+    @Value("${datasource.redis.errors.log-interval:1000}")
+    private long errorLogInterval;
+
+    @Value("${datasource.redis.errors.log-per-interval:1}")
+    private int errorLogPerInterval;
+
+    /**
+     * 为true时失败抛出RedisOperationException，不再返回false/null/0
+     */
+    @Value("${datasource.redis.errors.propagate:false}")
+    private boolean errorPropagate;
+
+    private volatile RedisErrorReporter errorReporter = new RedisErrorReporter(LowRedisUtil.class);
+
+    private static final int TRACE_OFF = 0;
+    private static final int TRACE_SAMPLED = 1;
+    private static final int TRACE_FULL = 2;
+
+    /**
+     * JSON读写跟踪：off 关闭；sampled 按trace.sample-rate抽样；full 全部。以DEBUG级别记录key、字节数及耗时
+     */
+    @Value("${datasource.redis.trace.mode:off}")
+    private String traceModeName;
+
+    /**
+     * sampled模式下每N次跟踪1次
+     */
+    @Value("${datasource.redis.trace.sample-rate:100}")
+    private int traceSampleRate;
+
+    private int traceMode = TRACE_OFF;
+
+    private volatile RedisCommandMetrics commandMetrics = RedisCommandMetrics.DISABLED;
 
     @PostConstruct
-    public void init() {
+    public void init() throws IOException {
+        byte[] dictionary = compressionDictionary.isEmpty() ? null : Files.readAllBytes(Paths.get(compressionDictionary));
+        this.valueCompressor = new ValueCompressor(compressionThreshold > 0 ? compressionThreshold : Integer.MAX_VALUE,
+                Deflater.BEST_SPEED, dictionary, compressionMaxLength);
+        this.traceMode = traceMode(traceModeName);
+        this.errorReporter = new RedisErrorReporter(LowRedisUtil.class, errorLogInterval, errorLogPerInterval, errorPropagate);
+        if (metricsEnabled && meterRegistry != null) {
+            this.commandMetrics = new RedisCommandMetrics(meterRegistry, "jedis", metricsPrefixDelimiter, metricsMaxPrefixes);
+        }
+
         JedisPoolConfig config = new JedisPoolConfig();// Jedis池配置
-//        config.setMaxTotal(Integer.MAX_VALUE); // 最大连接数, 默认8个
-        config.setMaxIdle(1000 * 60);// 对象最大空闲时间
-        config.setMaxWaitMillis(1000 * 20);// 获取对象时最大等待时间
+        this.poolConfig = config;
+        config.setMaxTotal(maxTotal);// 最大连接数
+        config.setMaxIdle(maxIdle);// 最大空闲连接数
+        config.setMinIdle(minIdle);// 最小空闲连接数
+        config.setMaxWaitMillis(maxWaitMillis);// 获取连接时最大等待时间
         config.setTestOnBorrow(false);
+        config.setTestWhileIdle(true);
 
-        List<JedisShardInfo> jdsInfoList = new ArrayList<JedisShardInfo>(1);
-        JedisShardInfo infoA = new JedisShardInfo(host, port);
-        setDb(infoA);
-        jdsInfoList.add(infoA);
+        List<JedisShardInfo> jdsInfoList = new ArrayList<JedisShardInfo>();
+        if ("sharded".equalsIgnoreCase(poolMode) && nodes.length > 0) {
+            for (String node : nodes) {
+                jdsInfoList.add(RedisShardInfo.parse(node, db));
+            }
+        } else {
+            jdsInfoList.add(new RedisShardInfo(host, port, db, 1));
+        }
 
-        JedisShardInfo infoB = new JedisShardInfo(host, port);
-        setDb(infoB);
-        jdsInfoList.add(infoB);
+        this.shards = jdsInfoList;
+        setShardedJedisPool(createPool(jdsInfoList));
+        warmUp(warmUp < 0 ? minIdle : warmUp);
+    }
 
-        JedisShardInfo infoC = new JedisShardInfo(host, port);
-        setDb(infoC);
-        jdsInfoList.add(infoC);
+    private int traceMode(String name) {
+        switch (name.trim().toLowerCase()) {
+            case "off":
+                return TRACE_OFF;
+            case "sampled":
+                if (traceSampleRate < 1) {
+                    throw new IllegalArgumentException("datasource.redis.trace.sample-rate必须大于0: " + traceSampleRate);
+                }
+                return traceSampleRate == 1 ? TRACE_FULL : TRACE_SAMPLED;
+            case "full":
+                return TRACE_FULL;
+            default:
+                throw new IllegalArgumentException("datasource.redis.trace.mode不支持: " + name);
+        }
+    }
+
+    private ShardedJedisPool createPool(List<JedisShardInfo> shards) {
+        return new ShardedJedisPool(poolConfig, shards, Hashing.MURMUR_HASH, Sharded.DEFAULT_KEY_TAG_PATTERN);
+    }
+
+    /**
+     * 新增分片节点
+     * <p>
+     * 立即切换到新的hash环，之后的读写按新环路由；原节点上归属于新节点的key在后台迁移，
+     * 迁移完成前这部分key读取不到(缓存未命中)，迁移完成后关闭旧连接池。
+     * 迁移期间写入的计数器会丢失旧节点上的累计值，list、zset冲突时保留在旧节点，见ShardMigration
+     *
+     * @param node 格式 host:port[:weight]
+     * @return 迁移进度
+     */
+    public synchronized ShardMigration addNode(String node) {
+        RedisShardInfo target = RedisShardInfo.parse(node, db);
+        for (JedisShardInfo shard : shards) {
+            if (shard.getName().equals(target.getName())) {
+                throw new IllegalArgumentException("redis节点已存在: " + node);
+            }
+        }
+        List<JedisShardInfo> sources = shards;
+        List<JedisShardInfo> ring = new ArrayList<JedisShardInfo>(sources);
+        ring.add(target);
+
+        ShardedJedisPool oldPool = shardedJedisPool;
+        this.shards = ring;
+        setShardedJedisPool(createPool(ring));
 
-        this.shardedJedisPool = new ShardedJedisPool(config, jdsInfoList);
-//		jedis = shardedJedisPool.getResource();
+        ShardMigration migration = new ShardMigration(sources, ring, target, db, migrationBatchSize, oldPool::close);
+        Thread thread = new Thread(migration, "redis-shard-migration-" + target.getName());
+        thread.setDaemon(true);
+        thread.start();
+        return migration;
+    }
+
+    /**
+     * 预先建立连接，避免启动后的第一批请求排队建连
+     *
+     * @param count 连接数
+     */
+    private void warmUp(int count) {
+        List<ShardedJedis> borrowed = new ArrayList<ShardedJedis>(count);
+        try {
+            for (int i = 0; i < Math.min(count, maxTotal); i++) {
+                ShardedJedis jedis = shardedJedisPool.getResource();
+                borrowed.add(jedis);
+                // 分片连接是懒建立的，逐个分片ping一次
+                for (Jedis shard : jedis.getAllShards()) {
+                    shard.ping();
+                }
+            }
+        } catch (Exception e) {
+            logger.warn("redis连接预热失败: {}", e.getMessage());
+        } finally {
+            for (ShardedJedis jedis : borrowed) {
+                closeConnection(jedis);
+            }
+        }
     }
 
     /**
      * 获取数据库连接
      *
-     * @return conn
+     * @return conn 失败时返回null(datasource.redis.errors.propagate=true时抛出RedisOperationException)
      */
     public ShardedJedis getConnection() {
-        ShardedJedis jedis = null;
         try {
-            jedis = shardedJedisPool.getResource();
+            return connection();
+        } catch (RedisOperationException e) {
+            if (errorReporter.isPropagate()) {
+                throw e;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * 获取连接，失败时上报一次并抛出RedisOperationException；
+     * 调用方的catch再交给errorReporter.report时不会重复计数，非propagate模式下按原方式返回false/null/0
+     */
+    private ShardedJedis connection() {
+        long start = System.nanoTime();
+        try {
+            ShardedJedis jedis = shardedJedisPool.getResource();
+            poolMetrics.recordBorrow(System.nanoTime() - start);
+            return jedis;
         } catch (Exception e) {
-            e.printStackTrace();
+            if (e.getCause() instanceof NoSuchElementException) {
+                poolMetrics.recordExhausted();
+            } else {
+                poolMetrics.recordFailure();
+            }
+            errorReporter.log("getConnection", null, e);
+            throw new RedisOperationException("getConnection", null, e);
         }
-        return jedis;
     }
 
     /**
@@ -108,7 +335,7 @@ public class RedisUtil {
 //				shardedJedisPool.returnResource(jedis);
                 jedis.close();
             } catch (Exception e) {
-                e.printStackTrace();
+                errorReporter.log("closeConnection", null, e);
             }
         }
     }
@@ -128,12 +355,15 @@ public class RedisUtil {
      */
     public boolean setData(String key, String value) {
         ShardedJedis jedis = null;
+        long startTime = commandMetrics.start();
         try {
-            jedis = getConnection();
+            jedis = connection();
             jedis.set(key, value);
+            commandMetrics.record("set", key, startTime, value);
             return true;
         } catch (Exception e) {
-            System.out.println(e);
+            commandMetrics.recordError("set", key, startTime, e);
+            errorReporter.report("setData", key, e);
         } finally {
             closeConnection(jedis);
         }
@@ -142,12 +372,15 @@ public class RedisUtil {
 
     public Long llen(String key) {
         ShardedJedis jedis = null;
+        long startTime = commandMetrics.start();
         try {
-            jedis = getConnection();
+            jedis = connection();
             Long l = jedis.llen(key);
+            commandMetrics.record("llen", key, startTime, null);
             return l;
         } catch (Exception e) {
-            e.printStackTrace();
+            commandMetrics.recordError("llen", key, startTime, e);
+            errorReporter.report("llen", key, e);
         } finally {
             closeConnection(jedis);
         }
@@ -161,12 +394,15 @@ public class RedisUtil {
      */
     public boolean rpush(String key, String value) {
         ShardedJedis jedis = null;
+        long startTime = commandMetrics.start();
         try {
-            jedis = getConnection();
+            jedis = connection();
             jedis.rpush(key, value);
+            commandMetrics.record("rpush", key, startTime, value);
             return true;
         } catch (Exception e) {
-            e.printStackTrace();
+            commandMetrics.recordError("rpush", key, startTime, e);
+            errorReporter.report("rpush", key, e);
         } finally {
             closeConnection(jedis);
         }
@@ -180,12 +416,15 @@ public class RedisUtil {
      */
     public boolean sadd(String key, String value) {
         ShardedJedis jedis = null;
+        long startTime = commandMetrics.start();
         try {
-            jedis = getConnection();
+            jedis = connection();
             jedis.sadd(key, value);
+            commandMetrics.record("sadd", key, startTime, value);
             return true;
         } catch (Exception e) {
-            e.printStackTrace();
+            commandMetrics.recordError("sadd", key, startTime, e);
+            errorReporter.report("sadd", key, e);
         } finally {
             closeConnection(jedis);
         }
@@ -200,12 +439,15 @@ public class RedisUtil {
     public String getData(String key) {
         String value = null;
         ShardedJedis jedis = null;
+        long startTime = commandMetrics.start();
         try {
-            jedis = getConnection();
+            jedis = connection();
             value = jedis.get(key);
+            commandMetrics.record("get", key, startTime, value);
             return value;
         } catch (Exception e) {
-            e.printStackTrace();
+            commandMetrics.recordError("get", key, startTime, e);
+            errorReporter.report("getData", key, e);
         } finally {
             closeConnection(jedis);
         }
@@ -214,12 +456,15 @@ public class RedisUtil {
 
     public boolean isMember(String key, String member) {
         ShardedJedis jedis = null;
+        long startTime = commandMetrics.start();
         try {
-            jedis = getConnection();
+            jedis = connection();
             boolean result = jedis.sismember(key, member);
+            commandMetrics.record("sismember", key, startTime, member);
             return result;
         } catch (Exception e) {
-            e.printStackTrace();
+            commandMetrics.recordError("sismember", key, startTime, e);
+            errorReporter.report("isMember", key, e);
         } finally {
             closeConnection(jedis);
         }
@@ -228,12 +473,15 @@ public class RedisUtil {
 
     public Set<String> smembers(String key) {
         ShardedJedis jedis = null;
+        long startTime = commandMetrics.start();
         try {
-            jedis = getConnection();
+            jedis = connection();
             Set<String> s = jedis.smembers(key);
+            commandMetrics.record("smembers", key, startTime, s);
             return s;
         } catch (Exception e) {
-            e.printStackTrace();
+            commandMetrics.recordError("smembers", key, startTime, e);
+            errorReporter.report("smembers", key, e);
         } finally {
             closeConnection(jedis);
         }
@@ -242,6 +490,8 @@ public class RedisUtil {
 
     /**
      * 获取List集合
+     * <p>
+     * 按字节读取，直接从UTF-8字节解析JSON，不经过中间String
      *
      * @param key
      * @param clazz
@@ -249,18 +499,21 @@ public class RedisUtil {
      */
     @SuppressWarnings({"unchecked", "rawtypes"})
     public List getListJsonData(String key, Class clazz) {
-        List<String> userList = null;
+        List<byte[]> userList = null;
         List list = new ArrayList();
         ShardedJedis jedis = null;
+        long startTime = commandMetrics.start();
         try {
-            jedis = getConnection();
-            userList = jedis.lrange(key, 0, -1);
-            for (String str : userList) {
-                list.add(JSON.parseObject(str, clazz));
+            jedis = connection();
+            userList = jedis.lrange(key.getBytes(StandardCharsets.UTF_8), 0, -1);
+            for (byte[] bytes : userList) {
+                list.add(JsonBytes.parseObject(bytes, clazz));
             }
+            commandMetrics.record("lrange", key, startTime, userList);
             return list;
         } catch (Exception e) {
-            e.printStackTrace();
+            commandMetrics.recordError("lrange", key, startTime, e);
+            errorReporter.report("getListJsonData", key, e);
         } finally {
             closeConnection(jedis);
         }
@@ -276,13 +529,18 @@ public class RedisUtil {
      */
     public boolean rpushJsonData(String key, Object o) {
         ShardedJedis jedis = null;
+        long startTime = commandMetrics.start();
+        long traceStart = traceStart();
         try {
-            jedis = getConnection();
-            jedis.rpush(key, JSON.toJSONString(o));
-            logger.info(o.toString());
+            jedis = connection();
+            byte[] json = JSON.toJSONBytes(o);
+            jedis.rpush(key.getBytes(StandardCharsets.UTF_8), json);
+            commandMetrics.record("rpush", key, startTime, json);
+            trace("rpushJsonData", key, json.length, traceStart);
             return true;
         } catch (Exception e) {
-            e.printStackTrace();
+            commandMetrics.recordError("rpush", key, startTime, e);
+            errorReporter.report("rpushJsonData", key, e);
 
         } finally {
             closeConnection(jedis);
@@ -290,6 +548,162 @@ public class RedisUtil {
         return false;
     }
 
+    /**
+     * 批量rpush，每批一条RPUSH命令并通过管道发送
+     *
+     * @param key
+     * @param values
+     * @return
+     */
+    public boolean rpushAll(String key, Collection<String> values) {
+        ShardedJedis jedis = null;
+        long startTime = commandMetrics.start();
+        try {
+            jedis = connection();
+            for (List<String> chunk : partition(values)) {
+                // 管道sync后不能复用，每批新建
+                ShardedJedisPipeline pipeline = jedis.pipelined();
+                pipeline.rpush(key, chunk.toArray(new String[0]));
+                pipeline.sync();
+            }
+            commandMetrics.record("rpushAll", key, startTime, values);
+            return true;
+        } catch (Exception e) {
+            commandMetrics.recordError("rpushAll", key, startTime, e);
+            errorReporter.report("rpushAll", key, e);
+        } finally {
+            closeConnection(jedis);
+        }
+        return false;
+    }
+
+    /**
+     * 批量rpush JSON数据
+     *
+     * @param key
+     * @param values
+     * @return
+     */
+    public boolean rpushAllJsonData(String key, Collection<?> values) {
+        List<String> json = new ArrayList<String>(values.size());
+        for (Object o : values) {
+            json.add(JSON.toJSONString(o));
+        }
+        return rpushAll(key, json);
+    }
+
+    /**
+     * 批量sadd
+     *
+     * @param key
+     * @param values
+     * @return
+     */
+    public boolean saddAll(String key, Collection<String> values) {
+        ShardedJedis jedis = null;
+        long startTime = commandMetrics.start();
+        try {
+            jedis = connection();
+            for (List<String> chunk : partition(values)) {
+                ShardedJedisPipeline pipeline = jedis.pipelined();
+                pipeline.sadd(key, chunk.toArray(new String[0]));
+                pipeline.sync();
+            }
+            commandMetrics.record("saddAll", key, startTime, values);
+            return true;
+        } catch (Exception e) {
+            commandMetrics.recordError("saddAll", key, startTime, e);
+            errorReporter.report("saddAll", key, e);
+        } finally {
+            closeConnection(jedis);
+        }
+        return false;
+    }
+
+    /**
+     * 批量zadd
+     *
+     * @param key
+     * @param scoreMembers 成员及分数
+     * @return
+     */
+    public boolean zaddAll(String key, Map<String, Double> scoreMembers) {
+        ShardedJedis jedis = null;
+        long startTime = commandMetrics.start();
+        try {
+            jedis = connection();
+            for (List<String> chunk : partition(scoreMembers.keySet())) {
+                ShardedJedisPipeline pipeline = jedis.pipelined();
+                Map<String, Double> batch = new HashMap<String, Double>(chunk.size() * 2);
+                for (String member : chunk) {
+                    batch.put(member, scoreMembers.get(member));
+                }
+                pipeline.zadd(key, batch);
+                pipeline.sync();
+            }
+            commandMetrics.record("zaddAll", key, startTime, scoreMembers.keySet());
+            return true;
+        } catch (Exception e) {
+            commandMetrics.recordError("zaddAll", key, startTime, e);
+            errorReporter.report("zaddAll", key, e);
+        } finally {
+            closeConnection(jedis);
+        }
+        return false;
+    }
+
+    /**
+     * 批量获取数据，各分片的命令在同一管道中发送
+     *
+     * @param keys
+     * @return 与keys顺序一致，不存在的key对应null
+     */
+    public List<String> getData(Collection<String> keys) {
+        List<String> values = new ArrayList<String>(keys.size());
+        String firstKey = keys.isEmpty() ? null : keys.iterator().next();
+        ShardedJedis jedis = null;
+        long startTime = commandMetrics.start();
+        try {
+            jedis = connection();
+            for (List<String> chunk : partition(keys)) {
+                ShardedJedisPipeline pipeline = jedis.pipelined();
+                List<Response<String>> responses = new ArrayList<Response<String>>(chunk.size());
+                for (String key : chunk) {
+                    responses.add(pipeline.get(key));
+                }
+                pipeline.sync();
+                for (Response<String> response : responses) {
+                    values.add(response.get());
+                }
+            }
+            commandMetrics.record("mget", firstKey, startTime, values);
+            return values;
+        } catch (Exception e) {
+            commandMetrics.recordError("mget", firstKey, startTime, e);
+            errorReporter.report("getData", null, e);
+        } finally {
+            closeConnection(jedis);
+        }
+        return null;
+    }
+
+    private <T> List<List<T>> partition(Collection<T> items) {
+        int size = batchSize > 0 ? batchSize : Math.max(1, items.size());
+        List<List<T>> chunks = new ArrayList<List<T>>();
+        List<T> chunk = new ArrayList<T>(Math.min(size, items.size()));
+        for (T item : items) {
+            chunk.add(item);
+            if (chunk.size() == size) {
+                chunks.add(chunk);
+                chunk = new ArrayList<T>(size);
+            }
+        }
+        if (!chunk.isEmpty()) {
+            chunks.add(chunk);
+        }
+        return chunks;
+    }
+
     /**
      * 存储map格式数据（map的key和value必须是String）
      *
@@ -298,12 +712,15 @@ public class RedisUtil {
      */
     public boolean hmset(String key, Map<String, String> params) {
         ShardedJedis jedis = null;
+        long startTime = commandMetrics.start();
         try {
-            jedis = getConnection();
+            jedis = connection();
             jedis.hmset(key, params);
+            commandMetrics.record("hmset", key, startTime, params);
             return true;
         } catch (Exception e) {
-            e.printStackTrace();
+            commandMetrics.recordError("hmset", key, startTime, e);
+            errorReporter.report("hmset", key, e);
         } finally {
             closeConnection(jedis);
         }
@@ -318,7 +735,8 @@ public class RedisUtil {
      * @return 返回list集合
      */
     public List<Map<String, String>> hmget(String key, Object obj) {
-        ShardedJedis jedis = getConnection();
+        long startTime = commandMetrics.start();
+        ShardedJedis jedis = null;
         String[] array = {};
         String str = null;
         if (obj instanceof String) {
@@ -332,13 +750,21 @@ public class RedisUtil {
             array = (String[]) obj;
         }
         List<Map<String, String>> list = new ArrayList<Map<String, String>>();
-        List<String> cities = jedis.hmget(key, array);
-        for (int i = 0; i < array.length; i++) {
-            Map<String, String> map = new HashMap<String, String>();
-            map.put(array[i], cities.get(i));
-            list.add(map);
+        try {
+            jedis = connection();
+            List<String> cities = jedis.hmget(key, array);
+            commandMetrics.record("hmget", key, startTime, cities);
+            for (int i = 0; i < array.length; i++) {
+                Map<String, String> map = new HashMap<String, String>();
+                map.put(array[i], cities.get(i));
+                list.add(map);
+            }
+        } catch (Exception e) {
+            commandMetrics.recordError("hmget", key, startTime, e);
+            errorReporter.report("hmget", key, e);
+        } finally {
+            closeConnection(jedis);
         }
-        closeConnection(jedis);
         return list;
     }
 
@@ -349,28 +775,168 @@ public class RedisUtil {
      * @return 返回list集合
      */
     public Map<String, String> hgetAll(String key) {
-        ShardedJedis jedis = getConnection();
+        long startTime = commandMetrics.start();
+        ShardedJedis jedis = null;
         Map<String, String> map = new HashMap<String, String>();
         try {
+            jedis = connection();
             map = jedis.hgetAll(key);
+            commandMetrics.record("hgetAll", key, startTime, map);
             return map;
         } catch (Exception e) {
-            e.printStackTrace();
+            commandMetrics.recordError("hgetAll", key, startTime, e);
+            errorReporter.report("hgetAll", key, e);
         } finally {
             closeConnection(jedis);
         }
         return map;
     }
 
+    /**
+     * 分页读取List集合，每页一次LRANGE(datasource.redis.batch-size条)，遍历到时才从字节解析JSON
+     * <p>
+     * 每页单独借还连接，遍历期间不占用连接；按下标分页，遍历期间List被头部弹出/插入时可能跳过或重复元素
+     *
+     * @param key
+     * @param clazz
+     * @return 顺序流，读取失败时在遍历过程中抛出异常
+     */
+    public <T> Stream<T> streamListJsonData(String key, Class<T> clazz) {
+        return streamListJsonData(key, clazz, null);
+    }
+
+    /**
+     * 分页读取List集合
+     *
+     * @param key
+     * @param clazz
+     * @param prefetchExecutor 预取下一页的线程池 为null时不预取
+     * @return 顺序流
+     */
+    public <T> Stream<T> streamListJsonData(String key, Class<T> clazz, Executor prefetchExecutor) {
+        final int pageSize = batchSize > 0 ? batchSize : 1000;
+        final byte[] rawKey = key.getBytes(StandardCharsets.UTF_8);
+        return PagedIterator.<byte[]>stream(cursor -> {
+            long start = Long.parseLong(cursor);
+            long startTime = commandMetrics.start();
+            ShardedJedis jedis = connection();
+            try {
+                List<byte[]> page = jedis.lrange(rawKey, start, start + pageSize - 1);
+                commandMetrics.record("lrange", key, startTime, page);
+                return PagedIterator.Page.range(page, start, pageSize);
+            } catch (RuntimeException e) {
+                commandMetrics.recordError("lrange", key, startTime, e);
+                throw e;
+            } finally {
+                closeConnection(jedis);
+            }
+        }, prefetchExecutor).map(bytes -> JsonBytes.<T>parseObject(bytes, clazz));
+    }
+
+    /**
+     * SSCAN分页遍历Set，代替大Set上的smembers
+     * <p>
+     * 遍历期间新增/删除的元素可能读到也可能读不到，元素可能重复出现
+     *
+     * @param key
+     * @return 顺序流，读取失败时在遍历过程中抛出异常
+     */
+    public Stream<String> sscan(String key) {
+        return sscan(key, null);
+    }
+
+    public Stream<String> sscan(String key, Executor prefetchExecutor) {
+        final ScanParams params = scanParams();
+        return PagedIterator.<String>stream(cursor -> {
+            long startTime = commandMetrics.start();
+            ShardedJedis jedis = connection();
+            try {
+                ScanResult<String> result = jedis.sscan(key, cursor, params);
+                commandMetrics.record("sscan", key, startTime, result.getResult());
+                return PagedIterator.Page.scan(result.getResult(), result.getStringCursor());
+            } catch (RuntimeException e) {
+                commandMetrics.recordError("sscan", key, startTime, e);
+                throw e;
+            } finally {
+                closeConnection(jedis);
+            }
+        }, prefetchExecutor);
+    }
+
+    /**
+     * HSCAN分页遍历Hash，代替大Hash上的hgetAll
+     *
+     * @param key
+     * @return 顺序流，读取失败时在遍历过程中抛出异常
+     */
+    public Stream<Map.Entry<String, String>> hscan(String key) {
+        return hscan(key, null);
+    }
+
+    public Stream<Map.Entry<String, String>> hscan(String key, Executor prefetchExecutor) {
+        final ScanParams params = scanParams();
+        return PagedIterator.<Map.Entry<String, String>>stream(cursor -> {
+            long startTime = commandMetrics.start();
+            ShardedJedis jedis = connection();
+            try {
+                ScanResult<Map.Entry<String, String>> result = jedis.hscan(key, cursor, params);
+                commandMetrics.record("hscan", key, startTime, null);
+                return PagedIterator.Page.scan(result.getResult(), result.getStringCursor());
+            } catch (RuntimeException e) {
+                commandMetrics.recordError("hscan", key, startTime, e);
+                throw e;
+            } finally {
+                closeConnection(jedis);
+            }
+        }, prefetchExecutor);
+    }
+
+    /**
+     * ZSCAN分页遍历有序集合，返回顺序不按分数排列
+     *
+     * @param key
+     * @return 顺序流，读取失败时在遍历过程中抛出异常
+     */
+    public Stream<Tuple> zscan(String key) {
+        return zscan(key, null);
+    }
+
+    public Stream<Tuple> zscan(String key, Executor prefetchExecutor) {
+        final ScanParams params = scanParams();
+        return PagedIterator.<Tuple>stream(cursor -> {
+            long startTime = commandMetrics.start();
+            ShardedJedis jedis = connection();
+            try {
+                ScanResult<Tuple> result = jedis.zscan(key, cursor, params);
+                commandMetrics.record("zscan", key, startTime, null);
+                return PagedIterator.Page.scan(result.getResult(), result.getStringCursor());
+            } catch (RuntimeException e) {
+                commandMetrics.recordError("zscan", key, startTime, e);
+                throw e;
+            } finally {
+                closeConnection(jedis);
+            }
+        }, prefetchExecutor);
+    }
+
+    private ScanParams scanParams() {
+        return new ScanParams().count(batchSize > 0 ? batchSize : 1000);
+    }
+
     public boolean setJsonData(String key, Object o) {
         ShardedJedis jedis = null;
+        long startTime = commandMetrics.start();
+        long traceStart = traceStart();
         try {
-            jedis = shardedJedisPool.getResource();
-            jedis.set(key, JSON.toJSONString(o));
-            logger.info(o.toString());
+            jedis = connection();
+            byte[] value = valueCompressor.compress(JSON.toJSONBytes(o));
+            jedis.set(key.getBytes(StandardCharsets.UTF_8), value);
+            commandMetrics.record("set", key, startTime, value);
+            trace("setJsonData", key, value.length, traceStart);
             return true;
         } catch (Exception e) {
-            e.printStackTrace();
+            commandMetrics.recordError("set", key, startTime, e);
+            errorReporter.report("setJsonData", key, e);
 
         } finally {
             closeConnection(jedis);
@@ -380,15 +946,23 @@ public class RedisUtil {
 
     @SuppressWarnings("all")
     public Object getJsonData(String key, Class clazz) {
-        String value = null;
+        byte[] value = null;
         ShardedJedis jedis = null;
+        long startTime = commandMetrics.start();
+        long traceStart = traceStart();
         try {
-            jedis = shardedJedisPool.getResource();
-            value = jedis.get(key);
+            jedis = connection();
+            value = jedis.get(key.getBytes(StandardCharsets.UTF_8));
 //			shardedJedisPool.returnResource(jedis);
-            return JSON.parseObject(value, clazz);
+            commandMetrics.record("get", key, startTime, value);
+            trace("getJsonData", key, value == null ? -1 : value.length, traceStart);
+            if (value == null) {
+                return null;
+            }
+            return JsonBytes.parseObject(valueCompressor.decompress(value), clazz);
         } catch (Exception e) {
-            e.printStackTrace();
+            commandMetrics.recordError("get", key, startTime, e);
+            errorReporter.report("getJsonData", key, e);
         } finally {
             closeConnection(jedis);
         }
@@ -398,12 +972,15 @@ public class RedisUtil {
     public String lpop(final String key) {
         String value = null;
         ShardedJedis jedis = null;
+        long startTime = commandMetrics.start();
         try {
-            jedis = getConnection();
+            jedis = connection();
             value = jedis.lpop(key);
+            commandMetrics.record("lpop", key, startTime, value);
             return value;
         } catch (Exception e) {
-            e.printStackTrace();
+            commandMetrics.recordError("lpop", key, startTime, e);
+            errorReporter.report("lpop", key, e);
         } finally {
             closeConnection(jedis);
         }
@@ -412,12 +989,15 @@ public class RedisUtil {
 
     public Boolean sismember(final String key, final String member) {
         ShardedJedis jedis = null;
+        long startTime = commandMetrics.start();
         try {
-            jedis = getConnection();
+            jedis = connection();
             Boolean value = jedis.sismember(key, member);
+            commandMetrics.record("sismember", key, startTime, member);
             return value;
         } catch (Exception e) {
-            e.printStackTrace();
+            commandMetrics.recordError("sismember", key, startTime, e);
+            errorReporter.report("sismember", key, e);
         } finally {
             closeConnection(jedis);
         }
@@ -425,13 +1005,26 @@ public class RedisUtil {
     }
 
     public Long zadd(final String key, int score, String member) {
+        return zadd(key, (double) score, member);
+    }
+
+    /**
+     * @param key
+     * @param score  分数 可以为小数
+     * @param member
+     * @return 新增的成员数，失败时返回0
+     */
+    public Long zadd(final String key, double score, String member) {
         ShardedJedis jedis = null;
+        long startTime = commandMetrics.start();
         try {
-            jedis = getConnection();
+            jedis = connection();
             Long l = jedis.zadd(key, score, member);
+            commandMetrics.record("zadd", key, startTime, member);
             return l;
         } catch (Exception e) {
-            e.printStackTrace();
+            commandMetrics.recordError("zadd", key, startTime, e);
+            errorReporter.report("zadd", key, e);
         } finally {
             closeConnection(jedis);
         }
@@ -442,30 +1035,40 @@ public class RedisUtil {
 
     public Set<String> zrevrange(final String key, int start, int end) {
         ShardedJedis jedis = null;
+        long startTime = commandMetrics.start();
         try {
-            jedis = getConnection();
+            jedis = connection();
             Set<String> s = jedis.zrevrange(key, start, end);
+            commandMetrics.record("zrevrange", key, startTime, s);
             return s;
 
         } catch (Exception e) {
-            e.printStackTrace();
+            commandMetrics.recordError("zrevrange", key, startTime, e);
+            errorReporter.report("zrevrange", key, e);
         } finally {
             closeConnection(jedis);
         }
         return null;
     }
 
+    /**
+     * 分数最高的成员
+     *
+     * @param key
+     * @return 集合为空时返回null
+     */
     public String zrevrangeByscore(final String key) {
         ShardedJedis jedis = null;
+        long startTime = commandMetrics.start();
         try {
-            jedis = getConnection();
-            Set<String> s = jedis.zrevrangeByScore(key, "+inf", "-inf");
-            Iterator<String> it = s.iterator();
-            while (it.hasNext()) {
-                return (String) it.next();
-            }
+            jedis = connection();
+            // 只取第一个，不再取回整个集合
+            Set<String> s = jedis.zrevrange(key, 0, 0);
+            commandMetrics.record("zrevrangeByScore", key, startTime, s);
+            return s.isEmpty() ? null : s.iterator().next();
         } catch (Exception e) {
-            e.printStackTrace();
+            commandMetrics.recordError("zrevrangeByScore", key, startTime, e);
+            errorReporter.report("zrevrangeByscore", key, e);
         } finally {
             closeConnection(jedis);
         }
@@ -475,43 +1078,177 @@ public class RedisUtil {
 
     public Set<Tuple> zrevrangeWithScores(final String key, int start, int end) {
         ShardedJedis jedis = null;
+        long startTime = commandMetrics.start();
         try {
-            jedis = getConnection();
+            jedis = connection();
             Set<Tuple> set = jedis.zrevrangeWithScores(key, start, end);
+            commandMetrics.record("zrevrangeWithScores", key, startTime, null);
             return set;
         } catch (Exception e) {
-            e.printStackTrace();
+            commandMetrics.recordError("zrevrangeWithScores", key, startTime, e);
+            errorReporter.report("zrevrangeWithScores", key, e);
         } finally {
             closeConnection(jedis);
         }
         return null;
     }
 
+    /**
+     * 整数分数，返回值截断为int；小数分数使用zincrbyDouble
+     */
     public int zincrby(final String key, int score, String member) {
+        return (int) zincrbyDouble(key, score, member);
+    }
+
+    /**
+     * @param key
+     * @param score  增量 可以为负、小数
+     * @param member
+     * @return 增加后的分数，失败时返回0
+     */
+    public double zincrbyDouble(final String key, double score, String member) {
         ShardedJedis jedis = null;
+        long startTime = commandMetrics.start();
         try {
-            jedis = getConnection();
+            jedis = connection();
             Double d = jedis.zincrby(key, score, member);
-            return d.intValue();
+            commandMetrics.record("zincrby", key, startTime, member);
+            return d;
         } catch (Exception e) {
-            e.printStackTrace();
+            commandMetrics.recordError("zincrby", key, startTime, e);
+            errorReporter.report("zincrby", key, e);
         } finally {
             closeConnection(jedis);
         }
         return 0;
     }
 
+    /**
+     * 批量zincrby，每批一次管道同步
+     *
+     * @param key
+     * @param increments 成员及增量
+     * @return
+     */
+    public boolean zincrbyAll(String key, Map<String, Double> increments) {
+        ShardedJedis jedis = null;
+        long startTime = commandMetrics.start();
+        try {
+            jedis = connection();
+            for (List<String> chunk : partition(increments.keySet())) {
+                ShardedJedisPipeline pipeline = jedis.pipelined();
+                for (String member : chunk) {
+                    pipeline.zincrby(key, increments.get(member), member);
+                }
+                pipeline.sync();
+            }
+            commandMetrics.record("zincrbyAll", key, startTime, increments.keySet());
+            return true;
+        } catch (Exception e) {
+            commandMetrics.recordError("zincrbyAll", key, startTime, e);
+            errorReporter.report("zincrbyAll", key, e);
+        } finally {
+            closeConnection(jedis);
+        }
+        return false;
+    }
+
+    /**
+     * 整数分数，返回值截断为int；小数分数或需区分成员不存在时使用zscoreDouble
+     *
+     * @return 成员的分数，成员不存在或失败时返回0
+     */
     public int zscore(final String key, String member) {
+        Double d = zscoreDouble(key, member);
+        return d == null ? 0 : d.intValue();
+    }
+
+    /**
+     * @param key
+     * @param member
+     * @return 成员的分数，成员不存在或失败时返回null
+     */
+    public Double zscoreDouble(final String key, String member) {
         ShardedJedis jedis = null;
+        long startTime = commandMetrics.start();
         try {
-            jedis = getConnection();
+            jedis = connection();
             Double d = jedis.zscore(key, member);
-            if (d == null) {
-                return 0;
+            commandMetrics.record("zscore", key, startTime, member);
+            return d;
+        } catch (Exception e) {
+            commandMetrics.recordError("zscore", key, startTime, e);
+            errorReporter.report("zscore", key, e);
+        } finally {
+            closeConnection(jedis);
+        }
+        return null;
+    }
+
+    /**
+     * @param key
+     * @param member
+     * @return 按分数从高到低的排名(从0开始)，成员不存在或失败时返回null
+     */
+    public Long zrevrank(final String key, String member) {
+        ShardedJedis jedis = null;
+        long startTime = commandMetrics.start();
+        try {
+            jedis = connection();
+            Long rank = jedis.zrevrank(key, member);
+            commandMetrics.record("zrevrank", key, startTime, member);
+            return rank;
+        } catch (Exception e) {
+            commandMetrics.recordError("zrevrank", key, startTime, e);
+            errorReporter.report("zrevrank", key, e);
+        } finally {
+            closeConnection(jedis);
+        }
+        return null;
+    }
+
+    /**
+     * 排名及分数，ZREVRANK与ZSCORE在同一管道中发送
+     *
+     * @param key
+     * @param member
+     * @return 成员不存在或失败时返回null
+     */
+    public Leaderboard.Entry zrevrankWithScore(final String key, String member) {
+        ShardedJedis jedis = null;
+        long startTime = commandMetrics.start();
+        try {
+            jedis = connection();
+            ShardedJedisPipeline pipeline = jedis.pipelined();
+            Response<Long> rank = pipeline.zrevrank(key, member);
+            Response<Double> score = pipeline.zscore(key, member);
+            pipeline.sync();
+            commandMetrics.record("zrevrankWithScore", key, startTime, member);
+            if (rank.get() == null || score.get() == null) {
+                // 两条命令之间成员被删除
+                return null;
             }
-            return d.intValue();
+            return new Leaderboard.Entry(member, score.get(), rank.get());
         } catch (Exception e) {
-            e.printStackTrace();
+            commandMetrics.recordError("zrevrankWithScore", key, startTime, e);
+            errorReporter.report("zrevrankWithScore", key, e);
+        } finally {
+            closeConnection(jedis);
+        }
+        return null;
+    }
+
+    public long zcard(final String key) {
+        ShardedJedis jedis = null;
+        long startTime = commandMetrics.start();
+        try {
+            jedis = connection();
+            Long count = jedis.zcard(key);
+            commandMetrics.record("zcard", key, startTime, null);
+            return count;
+        } catch (Exception e) {
+            commandMetrics.recordError("zcard", key, startTime, e);
+            errorReporter.report("zcard", key, e);
         } finally {
             closeConnection(jedis);
         }
@@ -526,12 +1263,15 @@ public class RedisUtil {
      */
     public long del(String key) {
         ShardedJedis jedis = null;
+        long startTime = commandMetrics.start();
         try {
-            jedis = getConnection();
+            jedis = connection();
             long count = jedis.del(key);
+            commandMetrics.record("del", key, startTime, null);
             return count;
         } catch (Exception e) {
-            e.printStackTrace();
+            commandMetrics.recordError("del", key, startTime, e);
+            errorReporter.report("del", key, e);
 
         } finally {
             closeConnection(jedis);
@@ -548,12 +1288,15 @@ public class RedisUtil {
      */
     public boolean expire(String key, int seconds) {
         ShardedJedis jedis = null;
+        long startTime = commandMetrics.start();
         try {
-            jedis = shardedJedisPool.getResource();
+            jedis = connection();
             jedis.expire(key, seconds);
+            commandMetrics.record("expire", key, startTime, null);
             return true;
         } catch (Exception e) {
-            e.printStackTrace();
+            commandMetrics.recordError("expire", key, startTime, e);
+            errorReporter.report("expire", key, e);
 
         } finally {
             closeConnection(jedis);
@@ -562,6 +1305,76 @@ public class RedisUtil {
     }
 
 
+    /**
+     * 本次调用是否跟踪：off不跟踪；sampled每trace.sample-rate次随机跟踪1次；full每次跟踪。均需开启DEBUG
+     *
+     * @return 跟踪时为开始时间，否则为-1
+     */
+    private long traceStart() {
+        if (traceMode == TRACE_OFF || !logger.isDebugEnabled()) {
+            return -1;
+        }
+        if (traceMode == TRACE_SAMPLED && ThreadLocalRandom.current().nextInt(traceSampleRate) != 0) {
+            return -1;
+        }
+        return System.nanoTime();
+    }
+
+    /**
+     * 记录key、字节数及耗时，不记录对象内容
+     */
+    private void trace(String operation, String key, int bytes, long traceStart) {
+        if (traceStart >= 0) {
+            logger.debug("{} key={} bytes={} cost={}us", operation, key, bytes,
+                    TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - traceStart));
+        }
+    }
+
+    /**
+     * 获取压缩统计
+     *
+     * @return 压缩器
+     */
+    public ValueCompressor getValueCompressor() {
+        return valueCompressor;
+    }
+
+    /**
+     * 获取连接池统计
+     *
+     * @return 活跃、空闲、等待数及等待时间分布
+     */
+    public JedisPoolMetrics getPoolMetrics() {
+        return poolMetrics;
+    }
+
+    /**
+     * 获取命令统计
+     *
+     * @return 未启用时为RedisCommandMetrics.DISABLED
+     */
+    public RedisCommandMetrics getCommandMetrics() {
+        return commandMetrics;
+    }
+
+    /**
+     * 设置命令统计
+     *
+     * @param commandMetrics 命令统计
+     */
+    public void setCommandMetrics(RedisCommandMetrics commandMetrics) {
+        this.commandMetrics = commandMetrics;
+    }
+
+    /**
+     * 获取错误统计
+     *
+     * @return 失败次数、各异常类型次数
+     */
+    public RedisErrorReporter getErrorReporter() {
+        return errorReporter;
+    }
+
     /**
      * 设置连接池
      *
@@ -569,6 +1382,7 @@ public class RedisUtil {
      */
     public void setShardedJedisPool(ShardedJedisPool shardedJedisPool) {
         this.shardedJedisPool = shardedJedisPool;
+        this.poolMetrics = new JedisPoolMetrics(shardedJedisPool);
     }
 
     /**
@@ -0,0 +1,303 @@
+package com.isoftstone.hgy.utils.redis;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 本地近端缓存(L1)，位于RedisTemplate之前
+ * <p>
+ * 按容量(LRU分段淘汰)和过期时间双重限制，缓存的对象与其他调用方共享，取出后不要修改
+ *
+ * @author Colin.Ye
+ * @version 1.0
+ * @ClassName NearCache
+ * @date 2019/8/22
+ **/
+public class NearCache {
+
+    private static final int SEGMENT_COUNT = 16;
+
+    private static final int GENERATION_STRIPES = 1024;
+
+    private final Segment[] segments;
+
+    private final long defaultTtlMillis;
+
+    /**
+     * 按key哈希分条的失效代数，失效时只递增key所在的条；回源期间同一条发生过失效的结果不再写入本地。
+     * 其他key的失效只在哈希冲突时放弃写入，不影响整体命中率
+     */
+    private final AtomicLongArray generations = new AtomicLongArray(GENERATION_STRIPES);
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+
+    /**
+     * @param maximumSize 最多缓存的key数量
+     * @param ttlSeconds  本地最长存活时间(秒)，redis上的剩余时间更短时以redis为准
+     */
+    public NearCache(int maximumSize, long ttlSeconds) {
+        if (maximumSize <= 0 || ttlSeconds <= 0) {
+            throw new IllegalArgumentException("maximumSize和ttlSeconds必须大于0");
+        }
+        int segmentSize = Math.max(1, (maximumSize + SEGMENT_COUNT - 1) / SEGMENT_COUNT);
+        this.segments = new Segment[SEGMENT_COUNT];
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            segments[i] = new Segment(segmentSize);
+        }
+        this.defaultTtlMillis = ttlSeconds * 1000;
+    }
+
+    // =============================读取============================
+
+    /**
+     * 获取普通缓存
+     *
+     * @param key 键
+     * @return 值 未命中返回null
+     */
+    public Object get(String key) {
+        return lookup(key, null);
+    }
+
+    /**
+     * 获取hash中的某一项
+     *
+     * @param key  键
+     * @param item 项
+     * @return 值 未命中返回null
+     */
+    public Object hget(String key, String item) {
+        return lookup(key, item);
+    }
+
+    /**
+     * 回源前记录key当前的失效代数，回源完成后传给put方法
+     *
+     * @param key 键
+     * @return 失效代数
+     */
+    public long generation(String key) {
+        return key == null ? 0 : generations.get(stripe(key));
+    }
+
+    // =============================写入============================
+
+    /**
+     * 回源后写入普通缓存
+     *
+     * @param key        键
+     * @param value      值 为null时不缓存
+     * @param pttl       redis剩余时间(毫秒)，-1代表永久有效，-2代表key不存在
+     * @param generation 回源前key的失效代数
+     */
+    public void put(String key, Object value, long pttl, long generation) {
+        store(key, null, value, pttl, generation);
+    }
+
+    /**
+     * 回源后写入hash中的某一项
+     *
+     * @param key        键
+     * @param item       项
+     * @param value      值 为null时不缓存
+     * @param pttl       redis剩余时间(毫秒)，-1代表永久有效，-2代表key不存在
+     * @param generation 回源前key的失效代数
+     */
+    public void hput(String key, String item, Object value, long pttl, long generation) {
+        store(key, item, value, pttl, generation);
+    }
+
+    // =============================失效============================
+
+    /**
+     * 使key失效，hash类型的key连同所有项一起失效
+     *
+     * @param key 可以传一个值 或多个
+     */
+    public void invalidate(String... key) {
+        for (String k : key) {
+            if (k != null) {
+                // 先递增代数再删除，删除之后到达的旧回源结果会被put丢弃
+                generations.incrementAndGet(stripe(k));
+                segmentFor(k).remove(k);
+            }
+        }
+    }
+
+    /**
+     * 清空本地缓存
+     */
+    public void invalidateAll() {
+        for (int i = 0; i < GENERATION_STRIPES; i++) {
+            generations.incrementAndGet(i);
+        }
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    // =============================统计============================
+
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    /**
+     * @return 因容量不足被淘汰的key数量(不含过期)
+     */
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    /**
+     * @return 命中率 没有请求时返回0
+     */
+    public double getHitRate() {
+        long hits = getHitCount();
+        long total = hits + getMissCount();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    /**
+     * @return 当前缓存的key数量(可能包含尚未清理的过期key)
+     */
+    public long size() {
+        long size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    @Override
+    public String toString() {
+        return "NearCache{size=" + size() + ", hits=" + getHitCount() + ", misses=" + getMissCount()
+                + ", evictions=" + getEvictionCount() + "}";
+    }
+
+    // =============================内部实现============================
+
+    private Object lookup(String key, String item) {
+        Object value = key == null ? null : segmentFor(key).get(key, item, System.currentTimeMillis());
+        if (value == null) {
+            missCount.increment();
+        } else {
+            hitCount.increment();
+        }
+        return value;
+    }
+
+    private void store(String key, String item, Object value, long pttl, long generation) {
+        if (key == null || value == null || pttl == -2 || pttl == 0) {
+            return;
+        }
+        long ttl = pttl > 0 ? Math.min(pttl, defaultTtlMillis) : defaultTtlMillis;
+        segmentFor(key).put(key, item, value, System.currentTimeMillis() + ttl, generation);
+    }
+
+    private Segment segmentFor(String key) {
+        return segments[hash(key) & (SEGMENT_COUNT - 1)];
+    }
+
+    private static int stripe(String key) {
+        return hash(key) & (GENERATION_STRIPES - 1);
+    }
+
+    private static int hash(String key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private static final class Entry {
+        /**
+         * 同一个key的普通值和hash项共用一个过期时间，与redis的key级别过期一致
+         */
+        long expireAt;
+        Object value;
+        Map<String, Object> items;
+    }
+
+    private final class Segment {
+
+        private final int capacity;
+
+        private final LinkedHashMap<String, Entry> map;
+
+        Segment(int capacity) {
+            this.capacity = capacity;
+            this.map = new LinkedHashMap<>(16, 0.75f, true);
+        }
+
+        synchronized Object get(String key, String item, long now) {
+            Entry entry = map.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.expireAt <= now) {
+                map.remove(key);
+                return null;
+            }
+            if (item == null) {
+                return entry.value;
+            }
+            return entry.items == null ? null : entry.items.get(item);
+        }
+
+        synchronized void put(String key, String item, Object value, long expireAt, long expectedGeneration) {
+            if (generations.get(stripe(key)) != expectedGeneration) {
+                return;
+            }
+            Entry entry = map.get(key);
+            if (entry == null) {
+                entry = new Entry();
+                entry.expireAt = expireAt;
+                map.put(key, entry);
+                evictIfNecessary();
+            } else {
+                entry.expireAt = Math.min(entry.expireAt, expireAt);
+            }
+            if (item == null) {
+                entry.value = value;
+            } else {
+                if (entry.items == null) {
+                    entry.items = new HashMap<>();
+                }
+                entry.items.put(item, value);
+            }
+        }
+
+        synchronized void remove(String key) {
+            map.remove(key);
+        }
+
+        synchronized void clear() {
+            map.clear();
+        }
+
+        synchronized int size() {
+            return map.size();
+        }
+
+        /**
+         * 超出容量时按最近最少使用淘汰，过期key在读取时清理
+         */
+        private void evictIfNecessary() {
+            Iterator<Entry> it = map.values().iterator();
+            while (map.size() > capacity && it.hasNext()) {
+                it.next();
+                it.remove();
+                evictionCount.increment();
+            }
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package com.isoftstone.hgy.utils.redis;
+
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 近端缓存跨节点失效
+ * <p>
+ * 本节点修改数据后通过redis发布订阅广播key，其他节点收到后清除本地缓存。
+ * 消息格式: 节点ID\n发送时间戳(毫秒)\nkey1\nkey2...。key中的反斜杠转义为\\，换行转义为\n(反斜杠加字母n)
+ *
+ * @author Colin.Ye
+ * @version 1.0
+ * @ClassName NearCacheInvalidator
+ * @date 2019/8/22
+ **/
+public class NearCacheInvalidator implements MessageListener {
+
+    private static final char SEPARATOR = '\n';
+
+    private static final char ESCAPE = '\\';
+
+    private final String nodeId = UUID.randomUUID().toString();
+
+    private final byte[] channel;
+
+    private final NearCache nearCache;
+
+    private final RedisTemplate<String, Object> redisTemplate;
+
+    private final RedisErrorReporter errorReporter;
+
+    private final LongAdder publishedCount = new LongAdder();
+    private final LongAdder receivedCount = new LongAdder();
+    private final LongAdder lagTotalMillis = new LongAdder();
+    private final AtomicLong maxLagMillis = new AtomicLong();
+    private volatile long lastLagMillis;
+
+    public NearCacheInvalidator(String channel, NearCache nearCache, RedisTemplate<String, Object> redisTemplate) {
+        this(channel, nearCache, redisTemplate, new RedisErrorReporter(NearCacheInvalidator.class));
+    }
+
+    /**
+     * @param errorReporter 广播失败时只计数及限流记录日志，不抛出异常
+     */
+    public NearCacheInvalidator(String channel, NearCache nearCache, RedisTemplate<String, Object> redisTemplate,
+                                RedisErrorReporter errorReporter) {
+        this.channel = channel.getBytes(StandardCharsets.UTF_8);
+        this.nearCache = nearCache;
+        this.redisTemplate = redisTemplate;
+        this.errorReporter = errorReporter;
+    }
+
+    /**
+     * 广播key失效，本节点的本地缓存由调用方自行清除
+     *
+     * @param key 可以传一个值 或多个
+     */
+    public void publish(String... key) {
+        byte[] message = message(key);
+        try {
+            redisTemplate.execute((RedisCallback<Long>) connection -> connection.publish(channel, message));
+            publishedCount.increment();
+        } catch (Exception e) {
+            // 广播失败时其他节点依靠本地过期时间兜底
+            errorReporter.log("publishInvalidation", key, e);
+        }
+    }
+
+    /**
+     * 编码广播消息，AsyncRedisUtil通过自己的连接发送
+     */
+    byte[] message(String... key) {
+        StringBuilder sb = new StringBuilder(64);
+        sb.append(nodeId).append(SEPARATOR).append(System.currentTimeMillis());
+        for (String k : key) {
+            if (k != null) {
+                sb.append(SEPARATOR);
+                escape(k, sb);
+            }
+        }
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    byte[] getChannel() {
+        return channel;
+    }
+
+    void recordPublished() {
+        publishedCount.increment();
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        List<String> parts = split(new String(message.getBody(), StandardCharsets.UTF_8));
+        if (parts.size() < 3 || nodeId.equals(parts.get(0))) {
+            return;
+        }
+        nearCache.invalidate(parts.subList(2, parts.size()).toArray(new String[0]));
+        long lag;
+        try {
+            lag = Math.max(0, System.currentTimeMillis() - Long.parseLong(parts.get(1)));
+        } catch (NumberFormatException e) {
+            return;
+        }
+        receivedCount.increment();
+        lagTotalMillis.add(lag);
+        lastLagMillis = lag;
+        maxLagMillis.accumulateAndGet(lag, Math::max);
+    }
+
+    private static void escape(String key, StringBuilder sb) {
+        for (int i = 0; i < key.length(); i++) {
+            char c = key.charAt(i);
+            if (c == ESCAPE) {
+                sb.append(ESCAPE).append(ESCAPE);
+            } else if (c == SEPARATOR) {
+                sb.append(ESCAPE).append('n');
+            } else {
+                sb.append(c);
+            }
+        }
+    }
+
+    /**
+     * 按未转义的换行拆分并还原转义
+     */
+    private static List<String> split(String body) {
+        List<String> parts = new ArrayList<>();
+        StringBuilder part = new StringBuilder();
+        for (int i = 0; i < body.length(); i++) {
+            char c = body.charAt(i);
+            if (c == SEPARATOR) {
+                parts.add(part.toString());
+                part.setLength(0);
+            } else if (c == ESCAPE && i + 1 < body.length()) {
+                char next = body.charAt(++i);
+                part.append(next == 'n' ? SEPARATOR : next);
+            } else {
+                part.append(c);
+            }
+        }
+        parts.add(part.toString());
+        return parts;
+    }
+
+    // =============================统计============================
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public RedisErrorReporter getErrorReporter() {
+        return errorReporter;
+    }
+
+    public long getPublishedCount() {
+        return publishedCount.sum();
+    }
+
+    public long getReceivedCount() {
+        return receivedCount.sum();
+    }
+
+    /**
+     * 失效延迟(毫秒)，按发送方时间戳计算，受节点间时钟偏差影响
+     *
+     * @return 平均延迟 没有收到消息时返回0
+     */
+    public double getAverageLagMillis() {
+        long count = getReceivedCount();
+        return count == 0 ? 0 : (double) lagTotalMillis.sum() / count;
+    }
+
+    public long getMaxLagMillis() {
+        return maxLagMillis.get();
+    }
+
+    public long getLastLagMillis() {
+        return lastLagMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "NearCacheInvalidator{nodeId=" + nodeId + ", published=" + getPublishedCount()
+                + ", received=" + getReceivedCount() + ", avgLagMillis=" + getAverageLagMillis()
+                + ", maxLagMillis=" + getMaxLagMillis() + "}";
+    }
+}
@@ -0,0 +1,122 @@
+package com.isoftstone.hgy.utils.redis;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * 分页遍历大集合
+ * <p>
+ * 每次只加载一页(LRANGE窗口或一次SCAN)，内存占用与页大小有关而与集合大小无关；
+ * 指定prefetchExecutor时，消费当前页的同时在后台加载下一页
+ *
+ * @author Colin.Ye
+ * @version 1.0
+ * @ClassName PagedIterator
+ * @date 2019/8/22
+ **/
+public class PagedIterator<T> implements Iterator<T> {
+
+    /**
+     * 第一页的游标
+     */
+    public static final String START = "0";
+
+    /**
+     * 按游标加载一页
+     */
+    @FunctionalInterface
+    public interface PageLoader<T> {
+        Page<T> load(String cursor);
+    }
+
+    public static final class Page<T> {
+
+        private final List<T> items;
+
+        private final String next;
+
+        /**
+         * @param items 本页数据
+         * @param next  下一页游标 为null时表示没有下一页
+         */
+        public Page(List<T> items, String next) {
+            this.items = items == null ? Collections.<T>emptyList() : items;
+            this.next = next;
+        }
+
+        /**
+         * SCAN类命令的分页，游标回到0时结束
+         */
+        public static <T> Page<T> scan(List<T> items, String cursor) {
+            return new Page<>(items, START.equals(cursor) ? null : cursor);
+        }
+
+        /**
+         * LRANGE类命令的分页，不满一页时结束
+         */
+        public static <T> Page<T> range(List<T> items, long start, int pageSize) {
+            return new Page<>(items, items == null || items.size() < pageSize ? null : String.valueOf(start + pageSize));
+        }
+    }
+
+    private final PageLoader<T> loader;
+
+    private final Executor prefetchExecutor;
+
+    private Iterator<T> current = Collections.emptyIterator();
+
+    private String next = START;
+
+    private CompletableFuture<Page<T>> prefetched;
+
+    /**
+     * @param loader           分页加载
+     * @param prefetchExecutor 预取下一页的线程池 为null时不预取
+     */
+    public PagedIterator(PageLoader<T> loader, Executor prefetchExecutor) {
+        this.loader = loader;
+        this.prefetchExecutor = prefetchExecutor;
+    }
+
+    /**
+     * 转成顺序流，读取失败时在遍历过程中抛出异常
+     */
+    public static <T> Stream<T> stream(PageLoader<T> loader, Executor prefetchExecutor) {
+        Iterator<T> iterator = new PagedIterator<>(loader, prefetchExecutor);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED), false);
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (!current.hasNext()) {
+            if (next == null) {
+                return false;
+            }
+            Page<T> page = prefetched != null ? prefetched.join() : loader.load(next);
+            prefetched = null;
+            current = page.items.iterator();
+            next = page.next;
+            if (next != null && prefetchExecutor != null) {
+                String cursor = next;
+                prefetched = CompletableFuture.supplyAsync(() -> loader.load(cursor), prefetchExecutor);
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return current.next();
+    }
+}
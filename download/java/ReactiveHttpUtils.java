@@ -0,0 +1,194 @@
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.client.reactive.ClientHttpRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.reactive.function.BodyInserter;
+import org.springframework.web.reactive.function.BodyInserters;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import javax.annotation.PostConstruct;
+import java.net.URI;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * WebClient工具类，RestTemplateUtils的响应式版本，供WebFlux服务使用
+ * <p>
+ * 参数、请求头和URL拼接方式与RestTemplateUtils一致，返回Mono，不阻塞事件循环线程；
+ * 响应为4xx/5xx时以WebClientResponseException结束
+ *
+ * @author Colin.Ye
+ * @version 1.0
+ * @ClassName ReactiveHttpUtils
+ * @date 2019/7/31
+ **/
+@Component
+public class ReactiveHttpUtils {
+
+    @Autowired
+    private WebClient.Builder webClientBuilder;
+
+    private WebClient webClient;
+
+    @PostConstruct
+    public void init() {
+        this.webClient = webClientBuilder.build();
+    }
+
+    /**
+     * POST请求-JSON参数
+     *
+     * @param url
+     * @param params
+     * @param headers
+     * @return
+     */
+    public <T> Mono<T> httpPostJson(String url, Map params, Map headers, Class<T> clazz) {
+        return exchange(HttpMethod.POST, url, headers, jsonBody(params)).bodyToMono(clazz);
+    }
+
+    /**
+     * POST请求-FROM参数
+     *
+     * @param url
+     * @param params
+     * @param headers
+     * @return
+     */
+    public <T> Mono<T> httpPostForm(String url, Map params, Map headers, Class<T> clazz) {
+        return exchange(HttpMethod.POST, url, headers, formBody(params)).bodyToMono(clazz);
+    }
+
+    /**
+     * GET请求-?号参数
+     *
+     * @param url
+     * @param params
+     * @param headers
+     * @return
+     */
+    public <T> Mono<T> httpGetTraditional(String url, Map params, Map headers, Class<T> clazz) {
+        return exchange(HttpMethod.GET, HttpUrls.traditional(url, params), headers, null).bodyToMono(clazz);
+    }
+
+    /**
+     * GET请求-?号参数，响应为JSON数组或application/stream+json时按下游请求量逐个解析
+     *
+     * @param url
+     * @param params
+     * @param headers
+     * @param clazz   数组元素类型
+     * @return
+     */
+    public <T> Flux<T> httpGetStream(String url, Map params, Map headers, Class<T> clazz) {
+        return exchange(HttpMethod.GET, HttpUrls.traditional(url, params), headers, null).bodyToFlux(clazz);
+    }
+
+    /**
+     * GET请求-分隔符参数
+     *
+     * @param url
+     * @param params
+     * @param headers
+     * @return
+     */
+    public <T> Mono<T> httpGetPlaceholder(String url, List params, Map headers, Class<T> clazz) {
+        return exchange(HttpMethod.GET, HttpUrls.placeholder(url, params), headers, null).bodyToMono(clazz);
+    }
+
+    /**
+     * DELETE请求-?号参数
+     *
+     * @param url
+     * @param params
+     * @param headers
+     * @return
+     */
+    public <T> Mono<T> httpDeleteTraditional(String url, Map params, Map headers, Class<T> clazz) {
+        return exchange(HttpMethod.DELETE, HttpUrls.traditional(url, params), headers, null).bodyToMono(clazz);
+    }
+
+    /**
+     * DELETE请求-分隔符参数
+     *
+     * @param url
+     * @param params
+     * @param headers
+     * @return
+     */
+    public <T> Mono<T> httpDeletePlaceholder(String url, List params, Map headers, Class<T> clazz) {
+        return exchange(HttpMethod.DELETE, HttpUrls.placeholder(url, params), headers, null).bodyToMono(clazz);
+    }
+
+    /**
+     * PATCH请求-JSON参数
+     *
+     * @param url
+     * @param params
+     * @param headers
+     * @return
+     */
+    public <T> Mono<T> httpPatchJson(String url, Map params, Map headers, Class<T> clazz) {
+        return exchange(HttpMethod.PATCH, url, headers, jsonBody(params)).bodyToMono(clazz);
+    }
+
+    /**
+     * patch请求-FROM参数
+     *
+     * @param url
+     * @param params
+     * @param headers
+     * @return
+     */
+    public <T> Mono<T> httpPatchForm(String url, Map params, Map headers, Class<T> clazz) {
+        return exchange(HttpMethod.PATCH, url, headers, formBody(params)).bodyToMono(clazz);
+    }
+
+    private WebClient.ResponseSpec exchange(HttpMethod method, String url, Map headers, BodyInserter<?, ? super ClientHttpRequest> body) {
+        return exchange(method, HttpUrls.traditional(url, null), headers, body);
+    }
+
+    private WebClient.ResponseSpec exchange(HttpMethod method, URI uri, Map headers, BodyInserter<?, ? super ClientHttpRequest> body) {
+        WebClient.RequestBodySpec request = webClient.method(method).uri(uri).headers(httpHeaders -> addHeaders(httpHeaders, headers));
+        return body == null ? request.retrieve() : request.body(body).retrieve();
+    }
+
+    private void addHeaders(HttpHeaders httpHeaders, Map headers) {
+        if (headers != null) {
+            headers.forEach((o1, o2) -> httpHeaders.add(o1.toString(), o2.toString()));
+        }
+    }
+
+    private BodyInserter<?, ? super ClientHttpRequest> jsonBody(Map params) {
+        // json方式传参，params为null时不发送请求体
+        return params == null ? null : BodyInserters.fromObject(params);
+    }
+
+    /**
+     * 与RestTemplate的FormHttpMessageConverter一致：值全为字符串时按表单编码，否则按multipart
+     */
+    @SuppressWarnings("unchecked")
+    private BodyInserter<?, ? super ClientHttpRequest> formBody(Map params) {
+        params = params == null ? new LinkedHashMap<>() : params;
+        boolean multipart = false;
+        MultiValueMap<String, Object> multiValueMap = new LinkedMultiValueMap<>();
+        for (Object entry : params.entrySet()) {
+            Map.Entry e = (Map.Entry) entry;
+            multiValueMap.add(e.getKey().toString(), e.getValue());
+            multipart |= e.getValue() != null && !(e.getValue() instanceof String);
+        }
+        if (multipart) {
+            return BodyInserters.fromMultipartData(multiValueMap);
+        }
+        MultiValueMap<String, String> formData = new LinkedMultiValueMap<>();
+        multiValueMap.forEach((k, v) -> v.forEach(o -> formData.add(k, (String) o)));
+        return BodyInserters.fromFormData(formData);
+    }
+
+}
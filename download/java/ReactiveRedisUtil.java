@@ -0,0 +1,694 @@
+package com.isoftstone.hgy.utils.redis;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.serializer.RedisElementReader;
+import org.springframework.data.redis.serializer.RedisElementWriter;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import javax.annotation.PostConstruct;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Redis响应式工具类，供WebFlux服务使用
+ * <p>
+ * 方法与RedisUtil一一对应，返回Mono/Flux，不阻塞事件循环线程；序列化方式与RedisTemplate一致，
+ * 与RedisUtil读写的数据互通，也同样维护近端缓存。list/set/hash的分页和SCAN读取按下游请求量逐页加载。
+ * redis.reactive.enabled=true时启用
+ *
+ * @author Colin.Ye
+ * @version 1.0
+ * @ClassName ReactiveRedisUtil
+ * @date 2019/8/22
+ **/
+@Component
+@ConditionalOnProperty(prefix = "redis.reactive", name = "enabled", havingValue = "true")
+public class ReactiveRedisUtil {
+
+    @Autowired
+    private ReactiveRedisTemplate<String, Object> reactiveRedisTemplate;
+
+    @Autowired
+    private RedisSerializer<Object> redisValueSerializer;
+
+    /**
+     * 本地近端缓存，未启用时为null
+     */
+    @Autowired(required = false)
+    private NearCache nearCache;
+
+    /**
+     * 近端缓存跨节点失效广播，未启用时为null
+     */
+    @Autowired(required = false)
+    private NearCacheInvalidator nearCacheInvalidator;
+
+    /**
+     * 分页/SCAN每页的数量
+     */
+    @Value("${redis.batch-size:500}")
+    private int batchSize;
+
+    /**
+     * 错误日志时间窗口(毫秒)，与RedisUtil共用redis.errors配置
+     */
+    @Value("${redis.errors.log-interval:1000}")
+    private long errorLogInterval;
+
+    @Value("${redis.errors.log-per-interval:1}")
+    private int errorLogPerInterval;
+
+    /**
+     * 为true时以RedisOperationException结束，不再返回false/null/0
+     */
+    @Value("${redis.errors.propagate:false}")
+    private boolean errorPropagate;
+
+    private volatile RedisErrorReporter errorReporter = new RedisErrorReporter(ReactiveRedisUtil.class);
+
+    @PostConstruct
+    public void init() {
+        this.errorReporter = new RedisErrorReporter(ReactiveRedisUtil.class, errorLogInterval, errorLogPerInterval, errorPropagate);
+    }
+
+    // =============================common============================
+
+    /**
+     * 指定缓存失效时间
+     *
+     * @param key  键
+     * @param time 时间(秒)
+     * @return
+     */
+    public Mono<Boolean> expire(String key, long time) {
+        if (time <= 0) {
+            return Mono.just(true);
+        }
+        return orElse("expire", key, invalidateNearCache(reactiveRedisTemplate.expire(key, Duration.ofSeconds(time)), key), false);
+    }
+
+    /**
+     * 根据key 获取过期时间
+     *
+     * @param key 键 不能为null
+     * @return 时间(秒) 返回-1代表为永久有效，-2代表key不存在
+     */
+    public Mono<Long> getExpire(String key) {
+        return reactiveRedisTemplate.execute(connection -> connection.keyCommands().ttl(rawKey(key))).next();
+    }
+
+    /**
+     * 判断key是否存在
+     *
+     * @param key 键
+     * @return true 存在 false不存在
+     */
+    public Mono<Boolean> hasKey(String key) {
+        return orElse("hasKey", key, reactiveRedisTemplate.hasKey(key), false);
+    }
+
+    /**
+     * 删除缓存
+     *
+     * @param key 可以传一个值 或多个
+     * @return 删除的个数
+     */
+    public Mono<Long> del(String... key) {
+        if (key == null || key.length == 0) {
+            return Mono.just(0L);
+        }
+        return invalidateNearCache(reactiveRedisTemplate.delete(key), key);
+    }
+
+    // ============================String=============================
+
+    /**
+     * 普通缓存获取
+     *
+     * @param key 键
+     * @return 值 不存在时为空
+     */
+    public Mono<Object> get(String key) {
+        if (key == null) {
+            return Mono.empty();
+        }
+        if (nearCache == null) {
+            return reactiveRedisTemplate.opsForValue().get(key);
+        }
+        return Mono.defer(() -> {
+            Object cached = nearCache.get(key);
+            if (cached != null) {
+                return Mono.just(cached);
+            }
+            long generation = nearCache.generation(key);
+            return Mono.zip(reactiveRedisTemplate.opsForValue().get(key), pTtl(key)).map(result -> {
+                nearCache.put(key, result.getT1(), result.getT2(), generation);
+                return result.getT1();
+            });
+        });
+    }
+
+    /**
+     * 普通缓存放入
+     *
+     * @param key   键
+     * @param value 值
+     * @return true成功 false失败
+     */
+    public Mono<Boolean> set(String key, Object value) {
+        return orElse("set", key, invalidateNearCache(reactiveRedisTemplate.opsForValue().set(key, value), key), false);
+    }
+
+    /**
+     * 普通缓存放入并设置时间
+     *
+     * @param key   键
+     * @param value 值
+     * @param time  时间(秒) time要大于0 如果time小于等于0 将设置无限期
+     * @return true成功 false 失败
+     */
+    public Mono<Boolean> set(String key, Object value, long time) {
+        if (time <= 0) {
+            return set(key, value);
+        }
+        return orElse("set", key, invalidateNearCache(reactiveRedisTemplate.opsForValue().set(key, value, Duration.ofSeconds(time)), key), false);
+    }
+
+    /**
+     * 递增
+     *
+     * @param key   键
+     * @param delta 要增加几(大于0)
+     * @return
+     */
+    public Mono<Long> incr(String key, long delta) {
+        if (delta < 0) {
+            throw new RuntimeException("递增因子必须大于0");
+        }
+        return invalidateNearCache(reactiveRedisTemplate.opsForValue().increment(key, delta), key);
+    }
+
+    /**
+     * 递减
+     *
+     * @param key   键
+     * @param delta 要减少几(小于0)
+     * @return
+     */
+    public Mono<Long> decr(String key, long delta) {
+        if (delta < 0) {
+            throw new RuntimeException("递减因子必须大于0");
+        }
+        return invalidateNearCache(reactiveRedisTemplate.opsForValue().increment(key, -delta), key);
+    }
+
+    /**
+     * 批量获取普通缓存(MGET)，不经过近端缓存
+     *
+     * @param keys 键
+     * @return 值 与keys顺序一致，不存在的key对应null
+     */
+    public Mono<List<Object>> mget(Collection<String> keys) {
+        return reactiveRedisTemplate.opsForValue().multiGet(keys);
+    }
+
+    // ================================Map=================================
+
+    /**
+     * HashGet
+     *
+     * @param key  键 不能为null
+     * @param item 项 不能为null
+     * @return 值 不存在时为空
+     */
+    public Mono<Object> hget(String key, String item) {
+        if (nearCache == null) {
+            return reactiveRedisTemplate.opsForHash().get(key, item);
+        }
+        return Mono.defer(() -> {
+            Object cached = nearCache.hget(key, item);
+            if (cached != null) {
+                return Mono.just(cached);
+            }
+            long generation = nearCache.generation(key);
+            return Mono.zip(reactiveRedisTemplate.opsForHash().get(key, item), pTtl(key)).map(result -> {
+                nearCache.hput(key, item, result.getT1(), result.getT2(), generation);
+                return result.getT1();
+            });
+        });
+    }
+
+    /**
+     * 获取hashKey对应的所有键值，大hash使用hScan
+     *
+     * @param key 键
+     * @return 对应的多个键值
+     */
+    public Mono<Map<Object, Object>> hmget(String key) {
+        return reactiveRedisTemplate.opsForHash().entries(key).collectMap(Map.Entry::getKey, Map.Entry::getValue);
+    }
+
+    /**
+     * HashSet
+     *
+     * @param key 键
+     * @param map 对应多个键值
+     * @return true 成功 false 失败
+     */
+    public Mono<Boolean> hmset(String key, Map<String, Object> map) {
+        return orElse("hmset", key, invalidateNearCache(reactiveRedisTemplate.opsForHash().putAll(key, map), key), false);
+    }
+
+    /**
+     * HashSet 并设置时间，写入和设置时间在同一个脚本中原子执行
+     *
+     * @param key  键
+     * @param map  对应多个键值
+     * @param time 时间(秒)
+     * @return true成功 false失败
+     */
+    public Mono<Boolean> hmset(String key, Map<String, Object> map, long time) {
+        if (time <= 0) {
+            return hmset(key, map);
+        }
+        List<Object> args = new ArrayList<>(map.size() * 2 + 1);
+        args.add(rawTime(time));
+        map.forEach((item, value) -> {
+            args.add(item.getBytes(StandardCharsets.UTF_8));
+            args.add(redisValueSerializer.serialize(value));
+        });
+        return orElse("hmset", key, invalidateNearCache(execute(RedisUtil.HSET_AND_EXPIRE, key, args).thenReturn(true), key), false);
+    }
+
+    /**
+     * 向一张hash表中放入数据,如果不存在将创建
+     *
+     * @param key   键
+     * @param item  项
+     * @param value 值
+     * @return true 成功 false失败
+     */
+    public Mono<Boolean> hset(String key, String item, Object value) {
+        return orElse("hset", key, invalidateNearCache(reactiveRedisTemplate.opsForHash().put(key, item, value).thenReturn(true), key), false);
+    }
+
+    /**
+     * 向一张hash表中放入数据,如果不存在将创建
+     *
+     * @param key   键
+     * @param item  项
+     * @param value 值
+     * @param time  时间(秒) 注意:如果已存在的hash表有时间,这里将会替换原有的时间
+     * @return true 成功 false失败
+     */
+    public Mono<Boolean> hset(String key, String item, Object value, long time) {
+        if (time <= 0) {
+            return hset(key, item, value);
+        }
+        List<Object> args = Arrays.asList(rawTime(time), item.getBytes(StandardCharsets.UTF_8), redisValueSerializer.serialize(value));
+        return orElse("hset", key, invalidateNearCache(execute(RedisUtil.HSET_AND_EXPIRE, key, args).thenReturn(true), key), false);
+    }
+
+    /**
+     * 删除hash表中的值
+     *
+     * @param key  键 不能为null
+     * @param item 项 可以使多个 不能为null
+     * @return 删除的个数
+     */
+    public Mono<Long> hdel(String key, Object... item) {
+        return invalidateNearCache(reactiveRedisTemplate.opsForHash().remove(key, item), key);
+    }
+
+    /**
+     * 判断hash表中是否有该项的值
+     *
+     * @param key  键 不能为null
+     * @param item 项 不能为null
+     * @return true 存在 false不存在
+     */
+    public Mono<Boolean> hHasKey(String key, String item) {
+        return reactiveRedisTemplate.opsForHash().hasKey(key, item);
+    }
+
+    /**
+     * hash递增 如果不存在,就会创建一个 并把新增后的值返回
+     *
+     * @param key  键
+     * @param item 项
+     * @param by   要增加几(大于0)
+     * @return
+     */
+    public Mono<Double> hincr(String key, String item, double by) {
+        return invalidateNearCache(reactiveRedisTemplate.<String, Object>opsForHash().increment(key, item, by), key);
+    }
+
+    /**
+     * hash递减
+     *
+     * @param key  键
+     * @param item 项
+     * @param by   要减少记(小于0)
+     * @return
+     */
+    public Mono<Double> hdecr(String key, String item, double by) {
+        return invalidateNearCache(reactiveRedisTemplate.<String, Object>opsForHash().increment(key, item, -by), key);
+    }
+
+    // ============================set=============================
+
+    /**
+     * 根据key获取Set中的所有值(SMEMBERS)，大set使用sScan
+     *
+     * @param key 键
+     * @return
+     */
+    public Flux<Object> sGet(String key) {
+        return orEmpty("sGet", key, reactiveRedisTemplate.opsForSet().members(key));
+    }
+
+    /**
+     * 根据value从一个set中查询,是否存在
+     *
+     * @param key   键
+     * @param value 值
+     * @return true 存在 false不存在
+     */
+    public Mono<Boolean> sHasKey(String key, Object value) {
+        return orElse("sHasKey", key, reactiveRedisTemplate.opsForSet().isMember(key, value), false);
+    }
+
+    /**
+     * 将数据放入set缓存
+     *
+     * @param key    键
+     * @param values 值 可以是多个
+     * @return 成功个数
+     */
+    public Mono<Long> sSet(String key, Object... values) {
+        return orElse("sSet", key, reactiveRedisTemplate.opsForSet().add(key, values), 0L);
+    }
+
+    /**
+     * 将set数据放入缓存
+     *
+     * @param key    键
+     * @param time   时间(秒)
+     * @param values 值 可以是多个
+     * @return 成功个数
+     */
+    public Mono<Long> sSetAndTime(String key, long time, Object... values) {
+        if (time <= 0) {
+            return sSet(key, values);
+        }
+        return orElse("sSetAndTime", key, execute(RedisUtil.SADD_AND_EXPIRE, key, rawValuesWithTime(time, Arrays.asList(values))), 0L);
+    }
+
+    /**
+     * 获取set缓存的长度
+     *
+     * @param key 键
+     * @return
+     */
+    public Mono<Long> sGetSetSize(String key) {
+        return orElse("sGetSetSize", key, reactiveRedisTemplate.opsForSet().size(key), 0L);
+    }
+
+    /**
+     * 移除值为value的
+     *
+     * @param key    键
+     * @param values 值 可以是多个
+     * @return 移除的个数
+     */
+    public Mono<Long> setRemove(String key, Object... values) {
+        return orElse("setRemove", key, reactiveRedisTemplate.opsForSet().remove(key, values), 0L);
+    }
+
+    // ===============================list=================================
+
+    /**
+     * 获取list缓存的内容
+     *
+     * @param key   键
+     * @param start 开始
+     * @param end   结束 0 到 -1代表所有值，大list使用lStream
+     * @return
+     */
+    public Flux<Object> lGet(String key, long start, long end) {
+        return orEmpty("lGet", key, reactiveRedisTemplate.opsForList().range(key, start, end));
+    }
+
+    /**
+     * 获取list缓存的长度
+     *
+     * @param key 键
+     * @return
+     */
+    public Mono<Long> lGetListSize(String key) {
+        return orElse("lGetListSize", key, reactiveRedisTemplate.opsForList().size(key), 0L);
+    }
+
+    /**
+     * 通过索引 获取list中的值
+     *
+     * @param key   键
+     * @param index 索引 index>=0时， 0 表头，1 第二个元素，依次类推；index<0时，-1，表尾，-2倒数第二个元素，依次类推
+     * @return
+     */
+    public Mono<Object> lGetIndex(String key, long index) {
+        return orElse("lGetIndex", key, reactiveRedisTemplate.opsForList().index(key, index), null);
+    }
+
+    /**
+     * 将list放入缓存
+     *
+     * @param key   键
+     * @param value 值
+     * @return
+     */
+    public Mono<Boolean> lSet(String key, Object value) {
+        return orElse("lSet", key, reactiveRedisTemplate.opsForList().rightPush(key, value).thenReturn(true), false);
+    }
+
+    /**
+     * 将list放入缓存
+     *
+     * @param key   键
+     * @param value 值
+     * @param time  时间(秒)
+     * @return
+     */
+    public Mono<Boolean> lSet(String key, Object value, long time) {
+        if (time <= 0) {
+            return lSet(key, value);
+        }
+        return orElse("lSet", key, execute(RedisUtil.RPUSH_AND_EXPIRE, key, rawValuesWithTime(time, Collections.singletonList(value))).thenReturn(true), false);
+    }
+
+    /**
+     * 将list放入缓存
+     *
+     * @param key   键
+     * @param value 值
+     * @return
+     */
+    public Mono<Boolean> lSet(String key, List<Object> value) {
+        return orElse("lSet", key, reactiveRedisTemplate.opsForList().rightPushAll(key, value).thenReturn(true), false);
+    }
+
+    /**
+     * 将list放入缓存
+     *
+     * @param key   键
+     * @param value 值
+     * @param time  时间(秒)
+     * @return
+     */
+    public Mono<Boolean> lSet(String key, List<Object> value, long time) {
+        if (time <= 0) {
+            return lSet(key, value);
+        }
+        return orElse("lSet", key, execute(RedisUtil.RPUSH_AND_EXPIRE, key, rawValuesWithTime(time, value)).thenReturn(true), false);
+    }
+
+    /**
+     * 根据索引修改list中的某条数据
+     *
+     * @param key   键
+     * @param index 索引
+     * @param value 值
+     * @return
+     */
+    public Mono<Boolean> lUpdateIndex(String key, long index, Object value) {
+        return orElse("lUpdateIndex", key, reactiveRedisTemplate.opsForList().set(key, index, value), false);
+    }
+
+    /**
+     * 移除N个值为value
+     *
+     * @param key   键
+     * @param count 移除多少个
+     * @param value 值
+     * @return 移除的个数
+     */
+    public Mono<Long> lRemove(String key, long count, Object value) {
+        return orElse("lRemove", key, reactiveRedisTemplate.opsForList().remove(key, count, value), 0L);
+    }
+
+    // ===============================stream=================================
+
+    /**
+     * 分页读取list，每页一次LRANGE(redis.batch-size条)，下游请求时才加载下一页
+     * <p>
+     * 按下标分页，遍历期间list被头部弹出/插入时可能跳过或重复元素
+     *
+     * @param key 键
+     * @return
+     */
+    public Flux<Object> lStream(String key) {
+        final int pageSize = batchSize > 0 ? batchSize : 500;
+        return Flux.range(0, Integer.MAX_VALUE)
+                .concatMap(page -> reactiveRedisTemplate.opsForList()
+                        .range(key, (long) page * pageSize, (long) page * pageSize + pageSize - 1)
+                        .collectList(), 1)
+                .takeUntil(list -> list.size() < pageSize)
+                .concatMapIterable(list -> list);
+    }
+
+    /**
+     * SSCAN遍历set，代替大set上的sGet；遍历期间的增删可能读到也可能读不到，元素可能重复出现
+     *
+     * @param key 键
+     * @return
+     */
+    public Flux<Object> sScan(String key) {
+        return reactiveRedisTemplate.opsForSet().scan(key, scanOptions());
+    }
+
+    /**
+     * HSCAN遍历hash，代替大hash上的hmget
+     *
+     * @param key 键
+     * @return
+     */
+    public Flux<Map.Entry<Object, Object>> hScan(String key) {
+        return reactiveRedisTemplate.opsForHash().scan(key, scanOptions());
+    }
+
+    /**
+     * ZSCAN遍历有序集合，返回顺序不按分数排列
+     *
+     * @param key 键
+     * @return
+     */
+    public Flux<ZSetOperations.TypedTuple<Object>> zScan(String key) {
+        return reactiveRedisTemplate.opsForZSet().scan(key, scanOptions());
+    }
+
+    private ScanOptions scanOptions() {
+        return ScanOptions.scanOptions().count(batchSize > 0 ? batchSize : 500).build();
+    }
+
+    // ===============================script=================================
+
+    /**
+     * 执行RedisUtil中的脚本，参数已转成byte[]；redis重启丢失脚本时自动回退到EVAL
+     */
+    private Mono<Long> execute(DefaultRedisScript<Long> script, String key, List<Object> args) {
+        return reactiveRedisTemplate.execute(script, Collections.singletonList(key), args,
+                RedisElementWriter.from(RedisUtil.RAW_ARGS_SERIALIZER), RedisElementReader.from(RedisUtil.LONG_RESULT_SERIALIZER))
+                .next()
+                .defaultIfEmpty(0L);
+    }
+
+    private byte[] rawTime(long time) {
+        return String.valueOf(time).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private List<Object> rawValuesWithTime(long time, Collection<?> values) {
+        List<Object> args = new ArrayList<>(values.size() + 1);
+        args.add(rawTime(time));
+        for (Object value : values) {
+            args.add(redisValueSerializer.serialize(value));
+        }
+        return args;
+    }
+
+    // ===============================near cache=================================
+
+    /**
+     * 写入成功后清除近端缓存并广播，广播失败时其他节点依靠本地过期时间兜底
+     */
+    private <T> Mono<T> invalidateNearCache(Mono<T> write, String... key) {
+        if (nearCache == null && nearCacheInvalidator == null) {
+            return write;
+        }
+        return write.flatMap(result -> {
+            if (nearCache != null) {
+                nearCache.invalidate(key);
+            }
+            if (nearCacheInvalidator == null) {
+                return Mono.just(result);
+            }
+            ByteBuffer channel = ByteBuffer.wrap(nearCacheInvalidator.getChannel());
+            ByteBuffer message = ByteBuffer.wrap(nearCacheInvalidator.message(key));
+            return reactiveRedisTemplate.execute(connection -> connection.pubSubCommands().publish(channel, message))
+                    .next()
+                    .doOnNext(receivers -> nearCacheInvalidator.recordPublished())
+                    .onErrorResume(e -> {
+                        errorReporter.log("publishInvalidation", key, e);
+                        return Mono.empty();
+                    })
+                    .thenReturn(result);
+        });
+    }
+
+    private Mono<Long> pTtl(String key) {
+        return reactiveRedisTemplate.execute(connection -> connection.keyCommands().pTtl(rawKey(key))).next();
+    }
+
+    private ByteBuffer rawKey(String key) {
+        return ByteBuffer.wrap(key.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 失败时上报并返回默认值，propagate=true时以RedisOperationException结束
+     */
+    private <T> Mono<T> orElse(String operation, String key, Mono<T> mono, T fallback) {
+        return mono.onErrorResume(e -> {
+            errorReporter.report(operation, key, e);
+            return Mono.justOrEmpty(fallback);
+        });
+    }
+
+    private <T> Flux<T> orEmpty(String operation, String key, Flux<T> flux) {
+        return flux.onErrorResume(e -> {
+            errorReporter.report(operation, key, e);
+            return Flux.empty();
+        });
+    }
+
+    /**
+     * @return 错误上报，可查看失败次数
+     */
+    public RedisErrorReporter getErrorReporter() {
+        return errorReporter;
+    }
+}
@@ -0,0 +1,249 @@
+package com.isoftstone.hgy.utils.redis;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * redis命令统计，RedisUtil(经RedisConfig包装的连接)及LowRedisUtil共用
+ * <p>
+ * 按命令及key前缀(第一个分隔符之前的部分)记录到MeterRegistry：
+ * redis.command 耗时，发布p50/p99/p999(Micrometer内部以HdrHistogram统计)及调用次数；
+ * redis.command.payload 参数与结果的字节数；redis.command.errors 按异常类型计数。
+ * 未启用时start()不取时间、record直接返回。每个命令的前缀数量有上限，超出的记为other
+ *
+ * @author Colin.Ye
+ * @version 1.0
+ * @ClassName RedisCommandMetrics
+ * @date 2019/8/22
+ **/
+public class RedisCommandMetrics {
+
+    /**
+     * 未启用时使用
+     */
+    public static final RedisCommandMetrics DISABLED = new RedisCommandMetrics(null, null, ':', 0);
+
+    static final String TIMER = "redis.command";
+    static final String PAYLOAD = "redis.command.payload";
+    static final String ERRORS = "redis.command.errors";
+
+    private static final String NO_PREFIX = "none";
+    private static final String OTHER_PREFIX = "other";
+
+    private final MeterRegistry registry;
+
+    private final String client;
+
+    private final char delimiter;
+
+    private final int maxPrefixes;
+
+    /**
+     * 命令 -> 前缀 -> 该组的meter
+     */
+    private final ConcurrentMap<String, ConcurrentMap<String, Meters>> meters = new ConcurrentHashMap<>();
+
+    /**
+     * @param registry    统计注册表，测试时可用SimpleMeterRegistry
+     * @param client      client标签，区分lettuce/jedis
+     * @param delimiter   key前缀分隔符
+     * @param maxPrefixes 每个命令最多统计的前缀数
+     */
+    public RedisCommandMetrics(MeterRegistry registry, String client, char delimiter, int maxPrefixes) {
+        this.registry = registry;
+        this.client = client;
+        this.delimiter = delimiter;
+        this.maxPrefixes = maxPrefixes;
+    }
+
+    public boolean isEnabled() {
+        return registry != null;
+    }
+
+    public MeterRegistry getRegistry() {
+        return registry;
+    }
+
+    /**
+     * @return 开始时间，未启用时为0
+     */
+    public long start() {
+        return registry == null ? 0 : System.nanoTime();
+    }
+
+    /**
+     * 记录一次成功的命令
+     *
+     * @param command 命令
+     * @param key     key 可以为null
+     * @param start   start()的返回值
+     * @param payload 参数或结果，支持String、byte[]及其集合/Map，按字节数计入；可以为null
+     */
+    public void record(String command, Object key, long start, Object payload) {
+        if (registry == null) {
+            return;
+        }
+        long nanos = System.nanoTime() - start;
+        Meters m = meters(command, key);
+        m.timer.record(nanos, TimeUnit.NANOSECONDS);
+        long bytes = sizeOf(payload);
+        if (bytes > 0) {
+            m.payload.record(bytes);
+        }
+    }
+
+    /**
+     * 记录一次失败的命令，耗时同样计入
+     *
+     * @param command 命令
+     * @param key     key 可以为null
+     * @param start   start()的返回值
+     * @param e       异常
+     */
+    public void recordError(String command, Object key, long start, Throwable e) {
+        if (registry == null) {
+            return;
+        }
+        long nanos = System.nanoTime() - start;
+        Meters m = meters(command, key);
+        m.timer.record(nanos, TimeUnit.NANOSECONDS);
+        Counter.builder(ERRORS)
+                .tag("client", client)
+                .tag("command", command)
+                .tag("prefix", m.prefix)
+                .tag("exception", cause(e).getClass().getSimpleName())
+                .register(registry)
+                .increment();
+    }
+
+    // =============================内部实现============================
+
+    /**
+     * 内层已上报的失败(如借连接失败)按原始异常统计
+     */
+    private static Throwable cause(Throwable e) {
+        return e instanceof RedisOperationException && e.getCause() != null ? e.getCause() : e;
+    }
+
+    private Meters meters(String command, Object key) {
+        ConcurrentMap<String, Meters> byPrefix = meters.get(command);
+        if (byPrefix == null) {
+            byPrefix = meters.computeIfAbsent(command, c -> new ConcurrentHashMap<>());
+        }
+        String prefix = prefix(key);
+        Meters m = byPrefix.get(prefix);
+        if (m == null) {
+            if (byPrefix.size() >= maxPrefixes) {
+                prefix = OTHER_PREFIX;
+            }
+            m = byPrefix.computeIfAbsent(prefix, p -> new Meters(command, p));
+        }
+        return m;
+    }
+
+    private String prefix(Object key) {
+        if (key instanceof String) {
+            String s = (String) key;
+            int i = s.indexOf(delimiter);
+            return i < 0 ? NO_PREFIX : s.substring(0, i);
+        }
+        if (key instanceof byte[]) {
+            byte[] bytes = (byte[]) key;
+            for (int i = 0; i < bytes.length; i++) {
+                if (bytes[i] == delimiter) {
+                    return new String(bytes, 0, i, StandardCharsets.UTF_8);
+                }
+            }
+        }
+        return NO_PREFIX;
+    }
+
+    /**
+     * 字节数，String按UTF-8计算但不编码
+     */
+    static long sizeOf(Object payload) {
+        if (payload == null) {
+            return 0;
+        }
+        if (payload instanceof byte[]) {
+            return ((byte[]) payload).length;
+        }
+        if (payload instanceof String) {
+            return utf8Length((String) payload);
+        }
+        if (payload instanceof Object[]) {
+            long size = 0;
+            for (Object o : (Object[]) payload) {
+                size += sizeOf(o);
+            }
+            return size;
+        }
+        if (payload instanceof Collection) {
+            long size = 0;
+            for (Object o : (Collection<?>) payload) {
+                size += sizeOf(o);
+            }
+            return size;
+        }
+        if (payload instanceof Map) {
+            long size = 0;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) payload).entrySet()) {
+                size += sizeOf(entry.getKey()) + sizeOf(entry.getValue());
+            }
+            return size;
+        }
+        return 0;
+    }
+
+    private static long utf8Length(String s) {
+        long length = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    private final class Meters {
+
+        final String prefix;
+
+        final Timer timer;
+
+        final DistributionSummary payload;
+
+        Meters(String command, String prefix) {
+            this.prefix = prefix;
+            this.timer = Timer.builder(TIMER)
+                    .tag("client", client)
+                    .tag("command", command)
+                    .tag("prefix", prefix)
+                    .publishPercentiles(0.5, 0.99, 0.999)
+                    .register(registry);
+            this.payload = DistributionSummary.builder(PAYLOAD)
+                    .baseUnit("bytes")
+                    .tag("client", client)
+                    .tag("command", command)
+                    .tag("prefix", prefix)
+                    .register(registry);
+        }
+    }
+}
@@ -3,12 +3,35 @@ package com.isoftstone.hgy.utils.redis;
 import com.fasterxml.jackson.annotation.JsonAutoDetect;
 import com.fasterxml.jackson.annotation.PropertyAccessor;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisURI;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.resource.ClientResources;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.ReactiveRedisConnectionFactory;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceClientConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializationContext;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.StringUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 
 /**
  * redis配置类
@@ -22,24 +45,187 @@ import org.springframework.data.redis.serializer.StringRedisSerializer;
 public class RedisConfig {
     @Bean
     @SuppressWarnings("all")
-    public RedisTemplate<String, Object> redisTemplate(RedisConnectionFactory factory) {
+    public RedisTemplate<String, Object> redisTemplate(RedisConnectionFactory factory, RedisSerializer<Object> redisValueSerializer,
+                                                       RedisCommandMetrics redisCommandMetrics) {
         RedisTemplate<String, Object> template = new RedisTemplate<String, Object>();
-        template.setConnectionFactory(factory);
-        Jackson2JsonRedisSerializer jackson2JsonRedisSerializer = new Jackson2JsonRedisSerializer(Object.class);
-        ObjectMapper om = new ObjectMapper();
-        om.setVisibility(PropertyAccessor.ALL, JsonAutoDetect.Visibility.ANY);
-        om.enableDefaultTyping(ObjectMapper.DefaultTyping.NON_FINAL);
-        jackson2JsonRedisSerializer.setObjectMapper(om);
+        // 启用命令统计时经包装的连接执行，未启用时直接使用原连接
+        template.setConnectionFactory(redisCommandMetrics.isEnabled()
+                ? new InstrumentedRedisConnectionFactory(factory, redisCommandMetrics) : factory);
         StringRedisSerializer stringRedisSerializer = new StringRedisSerializer();
         // key采用String的序列化方式
         template.setKeySerializer(stringRedisSerializer);
         // hash的key也采用String的序列化方式
         template.setHashKeySerializer(stringRedisSerializer);
-        // value序列化方式采用jackson
-        template.setValueSerializer(jackson2JsonRedisSerializer);
-        // hash的value序列化方式采用jackson
-        template.setHashValueSerializer(jackson2JsonRedisSerializer);
+        // value序列化方式由redis.serializer指定
+        template.setValueSerializer(redisValueSerializer);
+        // hash的value序列化方式与value一致
+        template.setHashValueSerializer(redisValueSerializer);
         template.afterPropertiesSet();
         return template;
     }
+
+    /**
+     * 命令统计，redis.metrics.enabled=true且存在MeterRegistry时启用，否则为RedisCommandMetrics.DISABLED
+     * <p>
+     * client标签取自连接工厂类型，如LettuceConnectionFactory为lettuce，JedisConnectionFactory为jedis
+     *
+     * @param delimiter   key前缀分隔符
+     * @param maxPrefixes 每个命令最多统计的前缀数
+     */
+    @Bean
+    public RedisCommandMetrics redisCommandMetrics(@Value("${redis.metrics.enabled:false}") boolean enabled,
+                                                   @Value("${redis.metrics.prefix-delimiter::}") char delimiter,
+                                                   @Value("${redis.metrics.max-prefixes:64}") int maxPrefixes,
+                                                   RedisConnectionFactory factory,
+                                                   ObjectProvider<MeterRegistry> meterRegistry) {
+        MeterRegistry registry = enabled ? meterRegistry.getIfAvailable() : null;
+        return registry == null ? RedisCommandMetrics.DISABLED
+                : new RedisCommandMetrics(registry, clientName(factory), delimiter, maxPrefixes);
+    }
+
+    /**
+     * ReactiveRedisUtil使用，key与value的序列化方式与redisTemplate一致，redis.reactive.enabled=true时启用
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "redis.reactive", name = "enabled", havingValue = "true")
+    public ReactiveRedisTemplate<String, Object> reactiveRedisTemplate(ReactiveRedisConnectionFactory factory,
+                                                                       RedisSerializer<Object> redisValueSerializer) {
+        StringRedisSerializer stringRedisSerializer = new StringRedisSerializer();
+        RedisSerializationContext<String, Object> serializationContext = RedisSerializationContext
+                .<String, Object>newSerializationContext(stringRedisSerializer)
+                .key(stringRedisSerializer)
+                .value(redisValueSerializer)
+                .hashKey(stringRedisSerializer)
+                .hashValue(redisValueSerializer)
+                .build();
+        return new ReactiveRedisTemplate<>(factory, serializationContext);
+    }
+
+    /**
+     * value序列化方式
+     * <p>
+     * redis.serializer=json(默认) 采用jackson并写入类名；
+     * redis.serializer=compact 采用Smile二进制，redis.serializer.classes中的类按顺序分配ID(从1开始)，
+     * 只写ID不写类名，已上线后只能在末尾追加；未注册的类只有在redis.serializer.allowed-packages之下时才写类名，
+     * 否则按json写入。Collection、Map、数组按json写入。compact模式仍可读取json模式写入的数据。
+     * 启用压缩时在外层包装压缩
+     */
+    @Bean
+    @SuppressWarnings("all")
+    public RedisSerializer<Object> redisValueSerializer(@Value("${redis.serializer:json}") String format,
+                                                        @Value("${redis.serializer.classes:}") String[] classes,
+                                                        @Value("${redis.serializer.allowed-packages:}") String[] allowedPackages,
+                                                        ObjectProvider<ValueCompressor> valueCompressor) throws ClassNotFoundException {
+        RedisSerializer<Object> serializer = valueSerializer(format, classes, allowedPackages);
+        ValueCompressor compressor = valueCompressor.getIfAvailable();
+        return compressor == null ? serializer : new CompressingRedisSerializer(serializer, compressor);
+    }
+
+    /**
+     * AsyncRedisUtil使用的lettuce客户端，地址、库、密码、超时与LettuceConnectionFactory一致，复用其IO线程
+     * <p>
+     * 仅支持单机redis，redis.async.enabled=true时启用；未启用时不要求LettuceConnectionFactory，也不建立额外连接
+     */
+    @Bean(destroyMethod = "shutdown")
+    @ConditionalOnProperty(prefix = "redis.async", name = "enabled", havingValue = "true")
+    public RedisClient asyncRedisClient(LettuceConnectionFactory factory) {
+        if (factory.getSentinelConfiguration() != null || factory.getClusterConfiguration() != null) {
+            throw new IllegalStateException("AsyncRedisUtil仅支持单机redis");
+        }
+        RedisStandaloneConfiguration standalone = factory.getStandaloneConfiguration();
+        LettuceClientConfiguration clientConfiguration = factory.getClientConfiguration();
+        RedisURI uri = RedisURI.builder()
+                .withHost(standalone.getHostName())
+                .withPort(standalone.getPort())
+                .withDatabase(standalone.getDatabase())
+                .withSsl(clientConfiguration.isUseSsl())
+                .withTimeout(clientConfiguration.getCommandTimeout())
+                .build();
+        standalone.getPassword().toOptional().ifPresent(uri::setPassword);
+        ClientResources clientResources = factory.getClientResources();
+        return clientResources != null ? RedisClient.create(clientResources, uri) : RedisClient.create(uri);
+    }
+
+    /**
+     * AsyncRedisUtil共用的连接，lettuce连接线程安全，多个请求的命令在一个连接上多路复用
+     */
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(prefix = "redis.async", name = "enabled", havingValue = "true")
+    public StatefulRedisConnection<String, Object> asyncRedisConnection(RedisClient asyncRedisClient,
+                                                                        RedisSerializer<Object> redisValueSerializer) {
+        return asyncRedisClient.connect(new SerializerRedisCodec(redisValueSerializer));
+    }
+
+    /**
+     * 大value压缩，redis.compression.enabled=true时启用
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "redis.compression", name = "enabled", havingValue = "true")
+    public ValueCompressor valueCompressor(@Value("${redis.compression.threshold:4096}") int threshold,
+                                           @Value("${redis.compression.level:1}") int level,
+                                           @Value("${redis.compression.dictionary:}") String dictionary,
+                                           @Value("${redis.compression.max-length:" + ValueCompressor.DEFAULT_MAX_LENGTH + "}") int maxLength) throws IOException {
+        byte[] dict = StringUtils.hasText(dictionary) ? Files.readAllBytes(Paths.get(dictionary)) : null;
+        return new ValueCompressor(threshold, level, dict, maxLength);
+    }
+
+    private static String clientName(RedisConnectionFactory factory) {
+        String name = ClassUtils.getUserClass(factory).getSimpleName();
+        if (name.endsWith("ConnectionFactory") && name.length() > "ConnectionFactory".length()) {
+            name = name.substring(0, name.length() - "ConnectionFactory".length());
+        }
+        return name.toLowerCase();
+    }
+
+    @SuppressWarnings("all")
+    private RedisSerializer<Object> valueSerializer(String format, String[] classes, String[] allowedPackages) throws ClassNotFoundException {
+        Jackson2JsonRedisSerializer jackson2JsonRedisSerializer = new Jackson2JsonRedisSerializer(Object.class);
+        ObjectMapper om = new ObjectMapper();
+        om.setVisibility(PropertyAccessor.ALL, JsonAutoDetect.Visibility.ANY);
+        om.enableDefaultTyping(ObjectMapper.DefaultTyping.NON_FINAL);
+        jackson2JsonRedisSerializer.setObjectMapper(om);
+        if (!"compact".equalsIgnoreCase(format)) {
+            return jackson2JsonRedisSerializer;
+        }
+        CompactRedisSerializer compactRedisSerializer = new CompactRedisSerializer(jackson2JsonRedisSerializer);
+        for (int i = 0; i < classes.length; i++) {
+            compactRedisSerializer.register(i + 1, ClassUtils.forName(classes[i].trim(), getClass().getClassLoader()));
+        }
+        compactRedisSerializer.allowPackages(allowedPackages);
+        return compactRedisSerializer;
+    }
+
+    /**
+     * 本地近端缓存，redis.near-cache.enabled=true时启用
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "redis.near-cache", name = "enabled", havingValue = "true")
+    public NearCache nearCache(@Value("${redis.near-cache.maximum-size:10000}") int maximumSize,
+                               @Value("${redis.near-cache.ttl:60}") long ttlSeconds) {
+        return new NearCache(maximumSize, ttlSeconds);
+    }
+
+    /**
+     * 近端缓存跨节点失效，修改数据时广播key，其他节点收到后清除本地缓存
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "redis.near-cache", name = "enabled", havingValue = "true")
+    public NearCacheInvalidator nearCacheInvalidator(@Value("${redis.near-cache.channel:near-cache:invalidate}") String channel,
+                                                     @Value("${redis.errors.log-interval:1000}") long errorLogInterval,
+                                                     @Value("${redis.errors.log-per-interval:1}") int errorLogPerInterval,
+                                                     NearCache nearCache, RedisTemplate<String, Object> redisTemplate) {
+        return new NearCacheInvalidator(channel, nearCache, redisTemplate,
+                new RedisErrorReporter(NearCacheInvalidator.class, errorLogInterval, errorLogPerInterval, false));
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "redis.near-cache", name = "enabled", havingValue = "true")
+    public RedisMessageListenerContainer nearCacheListenerContainer(@Value("${redis.near-cache.channel:near-cache:invalidate}") String channel,
+                                                                    RedisConnectionFactory factory,
+                                                                    NearCacheInvalidator nearCacheInvalidator) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(factory);
+        container.addMessageListener(nearCacheInvalidator, new ChannelTopic(channel));
+        return container;
+    }
 }
\ No newline at end of file
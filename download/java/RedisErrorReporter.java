@@ -0,0 +1,184 @@
+package com.isoftstone.hgy.utils.redis;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * RedisUtil、LowRedisUtil的错误上报，代替e.printStackTrace()
+ * <p>
+ * 每种异常类型每个时间窗口最多写maxPerInterval条WARN日志(带堆栈)，其余只计数，下一条日志中带出被略过的次数；
+ * redis故障时大量线程同时出错也只写少量日志，不会在System.err上排队。
+ * propagate=true时记录后抛出RedisOperationException，调用方可据此区分"失败"与"不存在"
+ *
+ * @author Colin.Ye
+ * @version 1.0
+ * @ClassName RedisErrorReporter
+ * @date 2019/8/22
+ **/
+public class RedisErrorReporter {
+
+    private final Logger logger;
+
+    private final long intervalNanos;
+
+    private final int maxPerInterval;
+
+    private final boolean propagate;
+
+    private final ConcurrentMap<Class<?>, Window> windows = new ConcurrentHashMap<>();
+
+    private final LongAdder errorCount = new LongAdder();
+    private final LongAdder suppressedCount = new LongAdder();
+
+    /**
+     * 默认每种异常每秒记录1条，不抛出异常
+     *
+     * @param owner 日志使用的类
+     */
+    public RedisErrorReporter(Class<?> owner) {
+        this(owner, 1000, 1, false);
+    }
+
+    /**
+     * @param owner          日志使用的类
+     * @param intervalMillis 时间窗口(毫秒)
+     * @param maxPerInterval 每种异常每个窗口最多记录的日志条数
+     * @param propagate      记录后是否抛出RedisOperationException
+     */
+    public RedisErrorReporter(Class<?> owner, long intervalMillis, int maxPerInterval, boolean propagate) {
+        this.logger = LoggerFactory.getLogger(owner);
+        this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+        this.maxPerInterval = maxPerInterval;
+        this.propagate = propagate;
+    }
+
+    /**
+     * 上报一次失败
+     *
+     * @param operation 失败的方法
+     * @param key       涉及的key，可以为null或数组
+     * @param e         异常
+     * @throws RedisOperationException propagate=true时
+     */
+    public void report(String operation, Object key, Throwable e) {
+        if (e instanceof RedisOperationException) {
+            // 内层方法(如getConnection)已上报过，不再计数
+            if (propagate) {
+                throw (RedisOperationException) e;
+            }
+            return;
+        }
+        log(operation, key, e);
+        if (propagate) {
+            throw new RedisOperationException(operation, keyText(key), e);
+        }
+    }
+
+    /**
+     * 只计数及限流记录日志，不抛出异常；用于关闭连接、启动加载等不影响调用结果的失败
+     *
+     * @param operation 失败的方法
+     * @param key       涉及的key，可以为null或数组
+     * @param e         异常
+     */
+    public void log(String operation, Object key, Throwable e) {
+        errorCount.increment();
+        Window window = windows.get(e.getClass());
+        if (window == null) {
+            window = windows.computeIfAbsent(e.getClass(), c -> new Window(System.nanoTime(), maxPerInterval));
+        }
+        if (!window.tryAcquire(System.nanoTime(), intervalNanos, maxPerInterval)) {
+            window.suppressed.increment();
+            suppressedCount.increment();
+            return;
+        }
+        long suppressed = window.suppressed.sumThenReset();
+        if (suppressed > 0) {
+            logger.warn("redis操作失败: {} key={}，此前略过{}次同类错误", operation, keyText(key), suppressed, e);
+        } else {
+            logger.warn("redis操作失败: {} key={}", operation, keyText(key), e);
+        }
+    }
+
+    public boolean isPropagate() {
+        return propagate;
+    }
+
+    // =============================统计============================
+
+    /**
+     * @return 上报的失败总数
+     */
+    public long getErrorCount() {
+        return errorCount.sum();
+    }
+
+    /**
+     * @return 因限流未写日志的次数
+     */
+    public long getSuppressedCount() {
+        return suppressedCount.sum();
+    }
+
+    /**
+     * @return 各异常类型的失败次数
+     */
+    public Map<String, Long> getErrorCounts() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        windows.forEach((type, window) -> counts.put(type.getName(), window.count.sum()));
+        return counts;
+    }
+
+    @Override
+    public String toString() {
+        return "RedisErrorReporter{errors=" + getErrorCount() + ", suppressed=" + getSuppressedCount()
+                + ", byType=" + getErrorCounts() + "}";
+    }
+
+    // =============================内部实现============================
+
+    private static String keyText(Object key) {
+        if (key instanceof Object[]) {
+            return Arrays.toString((Object[]) key);
+        }
+        return key == null ? null : String.valueOf(key);
+    }
+
+    /**
+     * 单种异常的时间窗口，窗口到期后第一个到达的线程重置许可
+     */
+    private static final class Window {
+
+        final AtomicLong start;
+
+        final AtomicInteger permits;
+
+        final LongAdder count = new LongAdder();
+
+        final LongAdder suppressed = new LongAdder();
+
+        Window(long now, int maxPerInterval) {
+            this.start = new AtomicLong(now);
+            this.permits = new AtomicInteger(maxPerInterval);
+        }
+
+        boolean tryAcquire(long now, long intervalNanos, int maxPerInterval) {
+            count.increment();
+            long begin = start.get();
+            if (now - begin >= intervalNanos && start.compareAndSet(begin, now)) {
+                permits.set(maxPerInterval);
+            }
+            return permits.get() > 0 && permits.getAndDecrement() > 0;
+        }
+    }
+}
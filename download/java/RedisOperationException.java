@@ -0,0 +1,38 @@
+package com.isoftstone.hgy.utils.redis;
+
+/**
+ * redis操作失败，RedisErrorReporter设置为抛出异常时由RedisUtil/LowRedisUtil抛出，代替返回false/null/0
+ *
+ * @author Colin.Ye
+ * @version 1.0
+ * @ClassName RedisOperationException
+ * @date 2019/8/22
+ **/
+public class RedisOperationException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String operation;
+
+    private final String key;
+
+    public RedisOperationException(String operation, String key, Throwable cause) {
+        super("redis操作失败: " + operation + (key == null ? "" : " key=" + key), cause);
+        this.operation = operation;
+        this.key = key;
+    }
+
+    /**
+     * @return 失败的方法
+     */
+    public String getOperation() {
+        return operation;
+    }
+
+    /**
+     * @return 涉及的key 可能为null
+     */
+    public String getKey() {
+        return key;
+    }
+}
@@ -0,0 +1,60 @@
+package com.isoftstone.ismart.analysis.util;
+
+import redis.clients.jedis.JedisShardInfo;
+
+import java.net.URI;
+
+/**
+ * 带权重的分片节点
+ * <p>
+ * 以host:port作为节点名参与一致性hash，虚拟节点数为160*权重，
+ * 节点在配置中的顺序变化不影响key的分布
+ *
+ * @author Colin.Ye
+ * @version 1.0
+ * @ClassName RedisShardInfo
+ * @date 2018/1/12
+ **/
+public class RedisShardInfo extends JedisShardInfo {
+
+    private final String name;
+
+    private final int weight;
+
+    public RedisShardInfo(String host, int port, int db, int weight) {
+        super(URI.create("redis://" + host + ":" + port + "/" + db));
+        this.name = host + ":" + port;
+        this.weight = weight;
+    }
+
+    /**
+     * 解析节点配置
+     *
+     * @param node 格式 host:port 或 host:port:weight
+     * @param db   库
+     * @return 分片节点
+     */
+    public static RedisShardInfo parse(String node, int db) {
+        String[] parts = node.trim().split(":");
+        if (parts.length < 2) {
+            throw new IllegalArgumentException("redis节点格式应为host:port[:weight]: " + node);
+        }
+        int weight = parts.length > 2 ? Integer.parseInt(parts[2]) : 1;
+        return new RedisShardInfo(parts[0], Integer.parseInt(parts[1]), db, weight);
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public int getWeight() {
+        return weight;
+    }
+
+    @Override
+    public String toString() {
+        return name + "*" + weight;
+    }
+}
@@ -1,14 +1,37 @@
 package com.isoftstone.hgy.utils.redis;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.serializer.GenericToStringSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
 import org.springframework.stereotype.Component;
 import org.springframework.util.CollectionUtils;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Redis工具类
@@ -21,9 +44,157 @@ import java.util.concurrent.TimeUnit;
 @Component
 public class RedisUtil {
 
+    /**
+     * 写入hash并设置时间，ARGV[1]为时间(秒)，其后为项、值交替
+     */
+    static final DefaultRedisScript<Long> HSET_AND_EXPIRE = new DefaultRedisScript<>(
+            "for i = 2, #ARGV, 2 do redis.call('HSET', KEYS[1], ARGV[i], ARGV[i + 1]) end "
+                    + "redis.call('EXPIRE', KEYS[1], ARGV[1]) "
+                    + "return 1", Long.class);
+
+    /**
+     * 写入set并设置时间，ARGV[1]为时间(秒)，其后为值，返回成功个数
+     */
+    static final DefaultRedisScript<Long> SADD_AND_EXPIRE = new DefaultRedisScript<>(
+            "local count = 0 "
+                    + "for i = 2, #ARGV do count = count + redis.call('SADD', KEYS[1], ARGV[i]) end "
+                    + "redis.call('EXPIRE', KEYS[1], ARGV[1]) "
+                    + "return count", Long.class);
+
+    /**
+     * 写入list并设置时间，ARGV[1]为时间(秒)，其后为值，返回list长度
+     */
+    static final DefaultRedisScript<Long> RPUSH_AND_EXPIRE = new DefaultRedisScript<>(
+            "local size = 0 "
+                    + "for i = 2, #ARGV do size = redis.call('RPUSH', KEYS[1], ARGV[i]) end "
+                    + "redis.call('EXPIRE', KEYS[1], ARGV[1]) "
+                    + "return size", Long.class);
+
+    /**
+     * 脚本参数已按各自的序列化方式转成byte[]，原样传递
+     */
+    static final RedisSerializer<Object> RAW_ARGS_SERIALIZER = new RedisSerializer<Object>() {
+        @Override
+        public byte[] serialize(Object o) throws SerializationException {
+            return (byte[]) o;
+        }
+
+        @Override
+        public Object deserialize(byte[] bytes) throws SerializationException {
+            return bytes;
+        }
+    };
+
+    static final RedisSerializer<Long> LONG_RESULT_SERIALIZER = new GenericToStringSerializer<>(Long.class);
+
     @Autowired
     private RedisTemplate<String, Object> redisTemplate;
 
+    /**
+     * 本地近端缓存，未启用时为null
+     */
+    @Autowired(required = false)
+    private NearCache nearCache;
+
+    /**
+     * 近端缓存跨节点失效广播，未启用时为null
+     */
+    @Autowired(required = false)
+    private NearCacheInvalidator nearCacheInvalidator;
+
+    /**
+     * 批量操作每批的key数量，超出时拆分成多次往返
+     */
+    @Value("${redis.batch-size:500}")
+    private int batchSize;
+
+    /**
+     * getOrLoad回源合并，同一key同时只有一个回源
+     */
+    private final SingleFlight loadFlight = new SingleFlight();
+
+    /**
+     * 错误日志时间窗口(毫秒)，每种异常每个窗口最多记录redis.errors.log-per-interval条
+     */
+    @Value("${redis.errors.log-interval:1000}")
+    private long errorLogInterval;
+
+    @Value("${redis.errors.log-per-interval:1}")
+    private int errorLogPerInterval;
+
+    /**
+     * 为true时失败抛出RedisOperationException，不再返回false/null/0
+     */
+    @Value("${redis.errors.propagate:false}")
+    private boolean errorPropagate;
+
+    private volatile RedisErrorReporter errorReporter = new RedisErrorReporter(RedisUtil.class);
+
+    /**
+     * 为true时incr/decr/hincr/hdecr先在本地累加，定期批量写入redis
+     */
+    @Value("${redis.counter.buffered:false}")
+    private boolean counterBuffered;
+
+    /**
+     * 定期写入间隔(毫秒)
+     */
+    @Value("${redis.counter.flush-interval:1000}")
+    private long counterFlushInterval;
+
+    /**
+     * 累计多少次增量后提前写入
+     */
+    @Value("${redis.counter.max-pending:10000}")
+    private int counterMaxPending;
+
+    /**
+     * 最多缓冲的key数，超出后新的key直接写redis
+     */
+    @Value("${redis.counter.max-keys:10000}")
+    private int counterMaxKeys;
+
+    /**
+     * 计数器写缓冲，未启用时为null
+     */
+    private volatile CounterBuffer counterBuffer;
+
+    @PostConstruct
+    public void init() {
+        this.errorReporter = new RedisErrorReporter(RedisUtil.class, errorLogInterval, errorLogPerInterval, errorPropagate);
+        if (counterBuffered) {
+            this.counterBuffer = new CounterBuffer(redisTemplate, counterFlushInterval, counterMaxPending, counterMaxKeys,
+                    this::invalidateNearCache, errorReporter);
+        }
+        loadScripts();
+    }
+
+    /**
+     * 写入计数器缓冲中剩余的增量
+     */
+    @PreDestroy
+    public void destroy() {
+        if (counterBuffer != null) {
+            counterBuffer.close();
+        }
+    }
+
+    /**
+     * 启动时预加载脚本，之后通过EVALSHA执行；redis重启丢失脚本时自动回退到EVAL
+     */
+    public void loadScripts() {
+        try {
+            redisTemplate.execute((RedisCallback<Object>) connection -> {
+                for (DefaultRedisScript<Long> script : Arrays.asList(HSET_AND_EXPIRE, SADD_AND_EXPIRE, RPUSH_AND_EXPIRE)) {
+                    connection.scriptLoad(script.getScriptAsString().getBytes(StandardCharsets.UTF_8));
+                }
+                return null;
+            });
+        } catch (Exception e) {
+            errorReporter.log("loadScripts", null, e);
+        }
+    }
+
     // =============================common============================
 
     /**
@@ -37,10 +208,11 @@ public class RedisUtil {
         try {
             if (time > 0) {
                 redisTemplate.expire(key, time, TimeUnit.SECONDS);
+                invalidateNearCache(key);
             }
             return true;
         } catch (Exception e) {
-            e.printStackTrace();
+            errorReporter.report("expire", key, e);
             return false;
         }
     }
@@ -65,7 +237,7 @@ public class RedisUtil {
         try {
             return redisTemplate.hasKey(key);
         } catch (Exception e) {
-            e.printStackTrace();
+            errorReporter.report("hasKey", key, e);
             return false;
         }
     }
@@ -83,6 +255,7 @@ public class RedisUtil {
             } else {
                 redisTemplate.delete(CollectionUtils.arrayToList(key));
             }
+            invalidateNearCache(key);
         }
     }
 
@@ -95,7 +268,27 @@ public class RedisUtil {
      * @return 值
      */
     public Object get(String key) {
-        return key == null ? null : redisTemplate.opsForValue().get(key);
+        if (key == null) {
+            return null;
+        }
+        if (nearCache == null) {
+            return redisTemplate.opsForValue().get(key);
+        }
+        Object value = nearCache.get(key);
+        if (value != null) {
+            return value;
+        }
+        // 值和剩余时间在同一次往返中取回，本地不会比redis存活更久
+        long generation = nearCache.generation(key);
+        byte[] rawKey = rawKey(key);
+        List<Object> results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            connection.get(rawKey);
+            connection.pTtl(rawKey);
+            return null;
+        });
+        value = results.get(0);
+        nearCache.put(key, value, (Long) results.get(1), generation);
+        return value;
     }
 
     /**
@@ -108,9 +301,10 @@ public class RedisUtil {
     public boolean set(String key, Object value) {
         try {
             redisTemplate.opsForValue().set(key, value);
+            invalidateNearCache(key);
             return true;
         } catch (Exception e) {
-            e.printStackTrace();
+            errorReporter.report("set", key, e);
             return false;
         }
 
@@ -128,18 +322,70 @@ public class RedisUtil {
         try {
             if (time > 0) {
                 redisTemplate.opsForValue().set(key, value, time, TimeUnit.SECONDS);
+                invalidateNearCache(key);
             } else {
                 set(key, value);
             }
             return true;
         } catch (Exception e) {
-            e.printStackTrace();
+            errorReporter.report("set", key, e);
             return false;
         }
     }
 
+    /**
+     * 获取缓存，不存在时回源并放入缓存
+     * <p>
+     * 同一key并发未命中时只有一个调用方回源，其余等待并共享其结果，避免热点key失效时大量请求同时打到后端
+     *
+     * @param key    键
+     * @param time   时间(秒) time要大于0 如果time小于等于0 将设置无限期
+     * @param loader 回源 返回null时不缓存
+     * @return 值
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T getOrLoad(String key, long time, Supplier<T> loader) {
+        Object value = get(key);
+        if (value != null) {
+            return (T) value;
+        }
+        return loadFlight.execute(key, () -> {
+            // 上一次回源可能刚刚写入
+            Object cached = get(key);
+            if (cached != null) {
+                return (T) cached;
+            }
+            T loaded = loader.get();
+            if (loaded != null) {
+                set(key, loaded, time);
+            }
+            return loaded;
+        });
+    }
+
+    /**
+     * 获取getOrLoad的回源统计，可用于查看实际回源及被合并的次数
+     *
+     * @return 回源合并
+     */
+    public SingleFlight getLoadFlight() {
+        return loadFlight;
+    }
+
+    /**
+     * 获取错误统计
+     *
+     * @return 失败次数、各异常类型次数
+     */
+    public RedisErrorReporter getErrorReporter() {
+        return errorReporter;
+    }
+
     /**
      * 递增
+     * <p>
+     * 启用计数器缓冲时只在本地累加，返回值为上次写入后redis中的值加本地未写入的增量(不含其他节点的未写入增量)，
+     * 某个key第一次写入redis前(或空闲被移出缓冲后)按0计算
      *
      * @param key   键
      * @param delta 要增加几(大于0)
@@ -149,7 +395,15 @@ public class RedisUtil {
         if (delta < 0) {
             throw new RuntimeException("递增因子必须大于0");
         }
-        return redisTemplate.opsForValue().increment(key, delta);
+        if (counterBuffer != null) {
+            Long buffered = counterBuffer.add(key, delta);
+            if (buffered != null) {
+                return buffered;
+            }
+        }
+        long value = redisTemplate.opsForValue().increment(key, delta);
+        invalidateNearCache(key);
+        return value;
     }
 
     /**
@@ -163,7 +417,36 @@ public class RedisUtil {
         if (delta < 0) {
             throw new RuntimeException("递减因子必须大于0");
         }
-        return redisTemplate.opsForValue().increment(key, -delta);
+        if (counterBuffer != null) {
+            Long buffered = counterBuffer.add(key, -delta);
+            if (buffered != null) {
+                return buffered;
+            }
+        }
+        long value = redisTemplate.opsForValue().increment(key, -delta);
+        invalidateNearCache(key);
+        return value;
+    }
+
+    /**
+     * 获取计数器的值，包含本节点未写入redis的增量
+     *
+     * @param key 键
+     * @return 值 不存在时为本地增量(未启用缓冲时为0)
+     */
+    public long getCounter(String key) {
+        byte[] raw = redisTemplate.execute((RedisCallback<byte[]>) connection -> connection.get(rawKey(key)));
+        long value = raw == null ? 0 : Long.parseLong(new String(raw, StandardCharsets.UTF_8));
+        return counterBuffer == null ? value : value + counterBuffer.getPending(key);
+    }
+
+    /**
+     * 获取计数器缓冲
+     *
+     * @return 未启用时返回null
+     */
+    public CounterBuffer getCounterBuffer() {
+        return counterBuffer;
     }
 
     // ================================Map=================================
@@ -176,7 +459,24 @@ public class RedisUtil {
      * @return 值
      */
     public Object hget(String key, String item) {
-        return redisTemplate.opsForHash().get(key, item);
+        if (nearCache == null) {
+            return redisTemplate.opsForHash().get(key, item);
+        }
+        Object value = nearCache.hget(key, item);
+        if (value != null) {
+            return value;
+        }
+        long generation = nearCache.generation(key);
+        byte[] rawKey = rawKey(key);
+        byte[] rawItem = rawHashKey(item);
+        List<Object> results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            connection.hGet(rawKey, rawItem);
+            connection.pTtl(rawKey);
+            return null;
+        }, redisTemplate.getHashValueSerializer());
+        value = results.get(0);
+        nearCache.hput(key, item, value, (Long) results.get(1), generation);
+        return value;
     }
 
     /**
@@ -199,9 +499,10 @@ public class RedisUtil {
     public boolean hmset(String key, Map<String, Object> map) {
         try {
             redisTemplate.opsForHash().putAll(key, map);
+            invalidateNearCache(key);
             return true;
         } catch (Exception e) {
-            e.printStackTrace();
+            errorReporter.report("hmset", key, e);
             return false;
         }
     }
@@ -215,14 +516,21 @@ public class RedisUtil {
      * @return true成功 false失败
      */
     public boolean hmset(String key, Map<String, Object> map, long time) {
+        if (time <= 0) {
+            return hmset(key, map);
+        }
         try {
-            redisTemplate.opsForHash().putAll(key, map);
-            if (time > 0) {
-                expire(key, time);
-            }
+            List<Object> args = new ArrayList<>(map.size() * 2 + 1);
+            args.add(rawTime(time));
+            map.forEach((item, value) -> {
+                args.add(rawHashKey(item));
+                args.add(rawHashValue(value));
+            });
+            execute(HSET_AND_EXPIRE, key, args);
+            invalidateNearCache(key);
             return true;
         } catch (Exception e) {
-            e.printStackTrace();
+            errorReporter.report("hmset", key, e);
             return false;
         }
     }
@@ -238,9 +546,10 @@ public class RedisUtil {
     public boolean hset(String key, String item, Object value) {
         try {
             redisTemplate.opsForHash().put(key, item, value);
+            invalidateNearCache(key);
             return true;
         } catch (Exception e) {
-            e.printStackTrace();
+            errorReporter.report("hset", key, e);
             return false;
         }
     }
@@ -255,14 +564,15 @@ public class RedisUtil {
      * @return true 成功 false失败
      */
     public boolean hset(String key, String item, Object value, long time) {
+        if (time <= 0) {
+            return hset(key, item, value);
+        }
         try {
-            redisTemplate.opsForHash().put(key, item, value);
-            if (time > 0) {
-                expire(key, time);
-            }
+            execute(HSET_AND_EXPIRE, key, Arrays.asList(rawTime(time), rawHashKey(item), rawHashValue(value)));
+            invalidateNearCache(key);
             return true;
         } catch (Exception e) {
-            e.printStackTrace();
+            errorReporter.report("hset", key, e);
             return false;
         }
     }
@@ -275,6 +585,7 @@ public class RedisUtil {
      */
     public void hdel(String key, Object... item) {
         redisTemplate.opsForHash().delete(key, item);
+        invalidateNearCache(key);
     }
 
     /**
@@ -297,7 +608,15 @@ public class RedisUtil {
      * @return
      */
     public double hincr(String key, String item, double by) {
-        return redisTemplate.opsForHash().increment(key, item, by);
+        if (counterBuffer != null) {
+            Double buffered = counterBuffer.addHash(key, item, by);
+            if (buffered != null) {
+                return buffered;
+            }
+        }
+        double value = redisTemplate.opsForHash().increment(key, item, by);
+        invalidateNearCache(key);
+        return value;
     }
 
     /**
@@ -309,7 +628,28 @@ public class RedisUtil {
      * @return
      */
     public double hdecr(String key, String item, double by) {
-        return redisTemplate.opsForHash().increment(key, item, -by);
+        if (counterBuffer != null) {
+            Double buffered = counterBuffer.addHash(key, item, -by);
+            if (buffered != null) {
+                return buffered;
+            }
+        }
+        double value = redisTemplate.opsForHash().increment(key, item, -by);
+        invalidateNearCache(key);
+        return value;
+    }
+
+    /**
+     * 获取hash计数项的值，包含本节点未写入redis的增量
+     *
+     * @param key  键
+     * @param item 项
+     * @return 值 不存在时为本地增量(未启用缓冲时为0)
+     */
+    public double hgetCounter(String key, String item) {
+        byte[] raw = redisTemplate.execute((RedisCallback<byte[]>) connection -> connection.hGet(rawKey(key), rawHashKey(item)));
+        double value = raw == null ? 0 : Double.parseDouble(new String(raw, StandardCharsets.UTF_8));
+        return counterBuffer == null ? value : value + counterBuffer.getPending(key, item);
     }
 
     // ============================set=============================
@@ -324,7 +664,7 @@ public class RedisUtil {
         try {
             return redisTemplate.opsForSet().members(key);
         } catch (Exception e) {
-            e.printStackTrace();
+            errorReporter.report("sGet", key, e);
             return null;
         }
     }
@@ -340,7 +680,7 @@ public class RedisUtil {
         try {
             return redisTemplate.opsForSet().isMember(key, value);
         } catch (Exception e) {
-            e.printStackTrace();
+            errorReporter.report("sHasKey", key, e);
             return false;
         }
     }
@@ -356,7 +696,7 @@ public class RedisUtil {
         try {
             return redisTemplate.opsForSet().add(key, values);
         } catch (Exception e) {
-            e.printStackTrace();
+            errorReporter.report("sSet", key, e);
             return 0;
         }
     }
@@ -370,14 +710,13 @@ public class RedisUtil {
      * @return 成功个数
      */
     public long sSetAndTime(String key, long time, Object... values) {
+        if (time <= 0) {
+            return sSet(key, values);
+        }
         try {
-            Long count = redisTemplate.opsForSet().add(key, values);
-            if (time > 0) {
-                expire(key, time);
-            }
-            return count;
+            return execute(SADD_AND_EXPIRE, key, rawValuesWithTime(time, Arrays.asList(values)));
         } catch (Exception e) {
-            e.printStackTrace();
+            errorReporter.report("sSetAndTime", key, e);
             return 0;
         }
     }
@@ -392,7 +731,7 @@ public class RedisUtil {
         try {
             return redisTemplate.opsForSet().size(key);
         } catch (Exception e) {
-            e.printStackTrace();
+            errorReporter.report("sGetSetSize", key, e);
             return 0;
         }
     }
@@ -409,7 +748,7 @@ public class RedisUtil {
             Long count = redisTemplate.opsForSet().remove(key, values);
             return count;
         } catch (Exception e) {
-            e.printStackTrace();
+            errorReporter.report("setRemove", key, e);
             return 0;
         }
     }
@@ -427,7 +766,7 @@ public class RedisUtil {
         try {
             return redisTemplate.opsForList().range(key, start, end);
         } catch (Exception e) {
-            e.printStackTrace();
+            errorReporter.report("lGet", key, e);
             return null;
         }
     }
@@ -442,7 +781,7 @@ public class RedisUtil {
         try {
             return redisTemplate.opsForList().size(key);
         } catch (Exception e) {
-            e.printStackTrace();
+            errorReporter.report("lGetListSize", key, e);
             return 0;
         }
     }
@@ -458,7 +797,7 @@ public class RedisUtil {
         try {
             return redisTemplate.opsForList().index(key, index);
         } catch (Exception e) {
-            e.printStackTrace();
+            errorReporter.report("lGetIndex", key, e);
             return null;
         }
     }
@@ -476,7 +815,7 @@ public class RedisUtil {
             redisTemplate.opsForList().rightPush(key, value);
             return true;
         } catch (Exception e) {
-            e.printStackTrace();
+            errorReporter.report("lSet", key, e);
             return false;
         }
     }
@@ -490,14 +829,14 @@ public class RedisUtil {
      * @return
      */
     public boolean lSet(String key, Object value, long time) {
+        if (time <= 0) {
+            return lSet(key, value);
+        }
         try {
-            redisTemplate.opsForList().rightPush(key, value);
-            if (time > 0) {
-                expire(key, time);
-            }
+            execute(RPUSH_AND_EXPIRE, key, rawValuesWithTime(time, Collections.singletonList(value)));
             return true;
         } catch (Exception e) {
-            e.printStackTrace();
+            errorReporter.report("lSet", key, e);
             return false;
         }
     }
@@ -515,7 +854,7 @@ public class RedisUtil {
             redisTemplate.opsForList().rightPushAll(key, value);
             return true;
         } catch (Exception e) {
-            e.printStackTrace();
+            errorReporter.report("lSet", key, e);
             return false;
         }
     }
@@ -529,14 +868,14 @@ public class RedisUtil {
      * @return
      */
     public boolean lSet(String key, List<Object> value, long time) {
+        if (time <= 0) {
+            return lSet(key, value);
+        }
         try {
-            redisTemplate.opsForList().rightPushAll(key, value);
-            if (time > 0) {
-                expire(key, time);
-            }
+            execute(RPUSH_AND_EXPIRE, key, rawValuesWithTime(time, value));
             return true;
         } catch (Exception e) {
-            e.printStackTrace();
+            errorReporter.report("lSet", key, e);
             return false;
         }
     }
@@ -554,7 +893,7 @@ public class RedisUtil {
             redisTemplate.opsForList().set(key, index, value);
             return true;
         } catch (Exception e) {
-            e.printStackTrace();
+            errorReporter.report("lUpdateIndex", key, e);
             return false;
         }
     }
@@ -572,8 +911,268 @@ public class RedisUtil {
             Long remove = redisTemplate.opsForList().remove(key, count, value);
             return remove;
         } catch (Exception e) {
-            e.printStackTrace();
+            errorReporter.report("lRemove", key, e);
             return 0;
         }
     }
-}
\ No newline at end of file
+
+    // ===============================stream=================================
+
+    /**
+     * 分页读取list，每页一次LRANGE(redis.batch-size条)，遍历期间不占用连接
+     * <p>
+     * 按下标分页，遍历期间list被头部弹出/插入时可能跳过或重复元素
+     *
+     * @param key 键
+     * @return 顺序流，读取失败时在遍历过程中抛出异常
+     */
+    public Stream<Object> lStream(String key) {
+        return lStream(key, null);
+    }
+
+    /**
+     * 分页读取list
+     *
+     * @param key              键
+     * @param prefetchExecutor 预取下一页的线程池 为null时不预取
+     * @return 顺序流
+     */
+    public Stream<Object> lStream(String key, Executor prefetchExecutor) {
+        final int pageSize = batchSize > 0 ? batchSize : 500;
+        return PagedIterator.stream(cursor -> {
+            long start = Long.parseLong(cursor);
+            return PagedIterator.Page.range(redisTemplate.opsForList().range(key, start, start + pageSize - 1), start, pageSize);
+        }, prefetchExecutor);
+    }
+
+    /**
+     * SSCAN遍历set，代替大set上的sGet
+     * <p>
+     * 遍历期间独占一个连接，必须关闭流(try-with-resources)；遍历期间的增删可能读到也可能读不到，元素可能重复出现
+     *
+     * @param key 键
+     * @return 顺序流
+     */
+    public Stream<Object> sScan(String key) {
+        return stream(redisTemplate.opsForSet().scan(key, scanOptions()));
+    }
+
+    /**
+     * HSCAN遍历hash，代替大hash上的hmget，必须关闭流
+     *
+     * @param key 键
+     * @return 顺序流
+     */
+    public Stream<Map.Entry<Object, Object>> hScan(String key) {
+        return stream(redisTemplate.opsForHash().scan(key, scanOptions()));
+    }
+
+    /**
+     * ZSCAN遍历有序集合，返回顺序不按分数排列，必须关闭流
+     *
+     * @param key 键
+     * @return 顺序流
+     */
+    public Stream<ZSetOperations.TypedTuple<Object>> zScan(String key) {
+        return stream(redisTemplate.opsForZSet().scan(key, scanOptions()));
+    }
+
+    private ScanOptions scanOptions() {
+        return ScanOptions.scanOptions().count(batchSize > 0 ? batchSize : 500).build();
+    }
+
+    private <T> Stream<T> stream(Cursor<T> cursor) {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(cursor, Spliterator.ORDERED), false)
+                .onClose(() -> {
+                    try {
+                        cursor.close();
+                    } catch (IOException e) {
+                        errorReporter.log("closeCursor", null, e);
+                    }
+                });
+    }
+
+    // ===============================bulk=================================
+
+    /**
+     * 批量获取普通缓存(MGET)，不经过近端缓存
+     *
+     * @param keys 键
+     * @return 值 与keys顺序一致，不存在的key对应null
+     */
+    public List<Object> mget(Collection<String> keys) {
+        List<Object> values = new ArrayList<>(keys.size());
+        for (List<String> chunk : partition(keys)) {
+            List<Object> result = redisTemplate.opsForValue().multiGet(chunk);
+            if (result == null) {
+                return null;
+            }
+            values.addAll(result);
+        }
+        return values;
+    }
+
+    /**
+     * 批量放入普通缓存并设置时间，每批一次管道往返
+     *
+     * @param map  键值
+     * @param time 时间(秒) time要大于0 如果time小于等于0 将设置无限期
+     * @return true成功 false失败
+     */
+    @SuppressWarnings("unchecked")
+    public boolean mset(Map<String, Object> map, long time) {
+        try {
+            RedisSerializer<Object> valueSerializer = (RedisSerializer<Object>) redisTemplate.getValueSerializer();
+            for (List<String> chunk : partition(map.keySet())) {
+                redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                    for (String key : chunk) {
+                        byte[] rawValue = valueSerializer.serialize(map.get(key));
+                        if (time > 0) {
+                            connection.setEx(rawKey(key), time, rawValue);
+                        } else {
+                            connection.set(rawKey(key), rawValue);
+                        }
+                    }
+                    return null;
+                });
+                invalidateNearCache(chunk.toArray(new String[0]));
+            }
+            return true;
+        } catch (Exception e) {
+            errorReporter.report("mset", null, e);
+            return false;
+        }
+    }
+
+    /**
+     * 批量获取hash中的多个项(HMGET)
+     *
+     * @param key    键
+     * @param fields 项
+     * @return 值 与fields顺序一致，不存在的项对应null
+     */
+    public List<Object> hmgetFields(String key, Collection<String> fields) {
+        List<Object> values = new ArrayList<>(fields.size());
+        for (List<String> chunk : partition(fields)) {
+            values.addAll(redisTemplate.opsForHash().multiGet(key, new ArrayList<Object>(chunk)));
+        }
+        return values;
+    }
+
+    /**
+     * 批量指定缓存失效时间，每批一次管道往返
+     *
+     * @param keys 键
+     * @param time 时间(秒)
+     * @return true成功 false失败
+     */
+    public boolean expire(Collection<String> keys, long time) {
+        try {
+            if (time > 0) {
+                for (List<String> chunk : partition(keys)) {
+                    redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                        for (String key : chunk) {
+                            connection.expire(rawKey(key), time);
+                        }
+                        return null;
+                    });
+                    invalidateNearCache(chunk.toArray(new String[0]));
+                }
+            }
+            return true;
+        } catch (Exception e) {
+            errorReporter.report("expire", null, e);
+            return false;
+        }
+    }
+
+    private <T> List<List<T>> partition(Collection<T> items) {
+        int size = batchSize > 0 ? batchSize : items.size();
+        List<List<T>> chunks = new ArrayList<>();
+        List<T> chunk = new ArrayList<>(Math.min(size, items.size()));
+        for (T item : items) {
+            chunk.add(item);
+            if (chunk.size() == size) {
+                chunks.add(chunk);
+                chunk = new ArrayList<>(size);
+            }
+        }
+        if (!chunk.isEmpty()) {
+            chunks.add(chunk);
+        }
+        return chunks;
+    }
+
+    // ===============================script=================================
+
+    /**
+     * 执行写入并设置时间的脚本，一次往返且原子执行
+     */
+    private long execute(DefaultRedisScript<Long> script, String key, List<Object> args) {
+        Long result = redisTemplate.execute(script, RAW_ARGS_SERIALIZER, LONG_RESULT_SERIALIZER,
+                Collections.singletonList(key), args.toArray());
+        return result == null ? 0 : result;
+    }
+
+    private byte[] rawTime(long time) {
+        return String.valueOf(time).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Object> rawValuesWithTime(long time, Collection<?> values) {
+        RedisSerializer<Object> valueSerializer = (RedisSerializer<Object>) redisTemplate.getValueSerializer();
+        List<Object> args = new ArrayList<>(values.size() + 1);
+        args.add(rawTime(time));
+        for (Object value : values) {
+            args.add(valueSerializer.serialize(value));
+        }
+        return args;
+    }
+
+    @SuppressWarnings("unchecked")
+    private byte[] rawHashValue(Object value) {
+        return ((RedisSerializer<Object>) redisTemplate.getHashValueSerializer()).serialize(value);
+    }
+
+    // ===============================near cache=================================
+
+    /**
+     * 获取本地近端缓存，可用于查看命中、未命中及淘汰次数
+     *
+     * @return 未启用时返回null
+     */
+    public NearCache getNearCache() {
+        return nearCache;
+    }
+
+    /**
+     * 获取跨节点失效广播，可用于查看失效延迟
+     *
+     * @return 未启用时返回null
+     */
+    public NearCacheInvalidator getNearCacheInvalidator() {
+        return nearCacheInvalidator;
+    }
+
+    /**
+     * 清除本节点的近端缓存并通知其他节点
+     */
+    private void invalidateNearCache(String... key) {
+        if (nearCache != null) {
+            nearCache.invalidate(key);
+        }
+        if (nearCacheInvalidator != null) {
+            nearCacheInvalidator.publish(key);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private byte[] rawKey(String key) {
+        return ((RedisSerializer<String>) redisTemplate.getKeySerializer()).serialize(key);
+    }
+
+    @SuppressWarnings("unchecked")
+    private byte[] rawHashKey(String item) {
+        return ((RedisSerializer<String>) redisTemplate.getHashKeySerializer()).serialize(item);
+    }
+}
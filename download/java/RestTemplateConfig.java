@@ -0,0 +1,166 @@
+import com.isoftstone.hgy.utils.redis.RedisUtil;
+import org.apache.http.HeaderElement;
+import org.apache.http.HttpHost;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.message.BasicHeaderElementIterator;
+import org.apache.http.protocol.HTTP;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RestTemplate配置类
+ * <p>
+ * 使用带连接池的Apache HttpClient，同一主机的请求复用keep-alive连接，不必每次重新建立TCP/TLS连接
+ *
+ * @author Colin.Ye
+ * @version 1.0
+ * @ClassName RestTemplateConfig
+ * @date 2019/7/31
+ **/
+@Configuration
+public class RestTemplateConfig {
+
+    @Bean
+    public RestTemplate restTemplate(CloseableHttpClient restHttpClient, ObjectProvider<HttpResponseCache> httpResponseCache) {
+        RestTemplate restTemplate = new RestTemplate(new HttpComponentsClientHttpRequestFactory(restHttpClient));
+        httpResponseCache.ifAvailable(restTemplate.getInterceptors()::add);
+        return restTemplate;
+    }
+
+    /**
+     * RestTemplateUtils的流式方法使用，与restTemplate共用连接池；请求体边写边发，不在内存中缓冲，也不经过拦截器
+     */
+    @Bean
+    public HttpComponentsClientHttpRequestFactory restStreamingRequestFactory(CloseableHttpClient restHttpClient) {
+        HttpComponentsClientHttpRequestFactory factory = new HttpComponentsClientHttpRequestFactory(restHttpClient);
+        factory.setBufferRequestBody(false);
+        return factory;
+    }
+
+    /**
+     * 连接池
+     *
+     * @param maxTotal          最大连接数
+     * @param maxPerRoute       每个主机的默认最大连接数
+     * @param routes            单独指定的主机最大连接数，格式 https://host[:port]=max,http://host[:port]=max
+     * @param validateAfterIdle 空闲超过该毫秒数的连接复用前先检查是否已被服务端关闭
+     */
+    @Bean(destroyMethod = "shutdown")
+    public PoolingHttpClientConnectionManager restConnectionManager(@Value("${rest.pool.max-total:200}") int maxTotal,
+                                                                    @Value("${rest.pool.max-per-route:50}") int maxPerRoute,
+                                                                    @Value("${rest.pool.routes:}") String[] routes,
+                                                                    @Value("${rest.pool.validate-after-idle:2000}") int validateAfterIdle) {
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(maxTotal);
+        connectionManager.setDefaultMaxPerRoute(maxPerRoute);
+        connectionManager.setValidateAfterInactivity(validateAfterIdle);
+        for (String route : routes) {
+            int i = route.lastIndexOf('=');
+            if (i < 0) {
+                throw new IllegalArgumentException("rest.pool.routes格式错误: " + route);
+            }
+            connectionManager.setMaxPerRoute(parseRoute(route.substring(0, i).trim()), Integer.parseInt(route.substring(i + 1).trim()));
+        }
+        return connectionManager;
+    }
+
+    /**
+     * HttpClient，后台线程定期关闭空闲及过期的连接
+     *
+     * @param connectTimeout        建立连接超时(毫秒)
+     * @param readTimeout           读取响应超时(毫秒)
+     * @param connectionWaitTimeout 连接池耗尽时等待连接的超时(毫秒)
+     * @param keepAlive             服务端未返回Keep-Alive: timeout时连接保持的毫秒数
+     * @param maxIdle               连接空闲超过该毫秒数即关闭
+     */
+    @Bean(destroyMethod = "close")
+    public CloseableHttpClient restHttpClient(PoolingHttpClientConnectionManager restConnectionManager,
+                                              @Value("${rest.connect-timeout:2000}") int connectTimeout,
+                                              @Value("${rest.read-timeout:10000}") int readTimeout,
+                                              @Value("${rest.pool.wait-timeout:1000}") int connectionWaitTimeout,
+                                              @Value("${rest.pool.keep-alive:30000}") long keepAlive,
+                                              @Value("${rest.pool.max-idle:60000}") long maxIdle) {
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(connectTimeout)
+                .setSocketTimeout(readTimeout)
+                .setConnectionRequestTimeout(connectionWaitTimeout)
+                .build();
+        return HttpClients.custom()
+                .setConnectionManager(restConnectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .setKeepAliveStrategy(keepAliveStrategy(keepAlive))
+                .evictExpiredConnections()
+                .evictIdleConnections(maxIdle, TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    /**
+     * GET响应缓存，rest.cache.enabled=true时启用；rest.cache.redis=true且存在RedisUtil时同时写入redis
+     *
+     * @param maximumSize    本地最多缓存的响应数量
+     * @param memoryTtl      本地最长保存时间(秒)
+     * @param staleRetention 带ETag/Last-Modified的响应过期后保留用于校验的时间(秒)
+     * @param maxBodySize    超过该字节数的响应不缓存
+     * @param varyHeaders    参与区分缓存的请求头
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "rest.cache", name = "enabled", havingValue = "true")
+    public HttpResponseCache httpResponseCache(@Value("${rest.cache.maximum-size:1000}") int maximumSize,
+                                               @Value("${rest.cache.memory-ttl:86400}") long memoryTtl,
+                                               @Value("${rest.cache.stale-retention:3600}") long staleRetention,
+                                               @Value("${rest.cache.max-body-size:1048576}") int maxBodySize,
+                                               @Value("${rest.cache.vary-headers:Accept,Accept-Language,Authorization}") String[] varyHeaders,
+                                               @Value("${rest.cache.redis:false}") boolean redis,
+                                               ObjectProvider<RedisUtil> redisUtil) {
+        return new HttpResponseCache(maximumSize, memoryTtl, staleRetention, maxBodySize, varyHeaders,
+                redis ? redisUtil.getIfAvailable() : null);
+    }
+
+    @Bean
+    public HttpPoolMetrics httpPoolMetrics(PoolingHttpClientConnectionManager restConnectionManager) {
+        return new HttpPoolMetrics(restConnectionManager);
+    }
+
+    /**
+     * 优先使用响应头Keep-Alive: timeout=秒，没有时使用默认值
+     */
+    private static ConnectionKeepAliveStrategy keepAliveStrategy(long defaultMillis) {
+        return (response, context) -> {
+            BasicHeaderElementIterator it = new BasicHeaderElementIterator(response.headerIterator(HTTP.CONN_KEEP_ALIVE));
+            while (it.hasNext()) {
+                HeaderElement element = it.nextElement();
+                if ("timeout".equalsIgnoreCase(element.getName()) && element.getValue() != null) {
+                    try {
+                        return Long.parseLong(element.getValue()) * 1000;
+                    } catch (NumberFormatException ignore) {
+                    }
+                }
+            }
+            return defaultMillis;
+        };
+    }
+
+    /**
+     * 与HttpClient路由规划一致：未指定端口时按协议补全，https路由为安全路由
+     */
+    private static HttpRoute parseRoute(String url) {
+        HttpHost host = HttpHost.create(url);
+        boolean secure = "https".equalsIgnoreCase(host.getSchemeName());
+        if (host.getPort() < 0) {
+            host = new HttpHost(host.getHostName(), secure ? 443 : 80, host.getSchemeName());
+        }
+        return new HttpRoute(host, null, secure);
+    }
+}
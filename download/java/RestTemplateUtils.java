@@ -1,17 +1,65 @@
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.isoftstone.hgy.utils.redis.SingleFlight;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.StreamingHttpOutputMessage;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
 import org.springframework.stereotype.Component;
 import org.springframework.util.LinkedMultiValueMap;
 import org.springframework.util.MultiValueMap;
+import org.springframework.util.StreamUtils;
+import org.springframework.web.client.ResourceAccessException;
 import org.springframework.web.client.RestTemplate;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * RestTemplate工具类
@@ -24,9 +72,81 @@ import java.util.Map;
 @Component
 public class RestTemplateUtils {
 
+    final Logger logger = LoggerFactory.getLogger(getClass());
+
     @Autowired
     private RestTemplate restTemplate;
 
+    /**
+     * invokeAll的并发线程数，仅在不支持虚拟线程的JDK上使用
+     */
+    @Value("${rest.invoke-all.pool-size:64}")
+    private int invokeAllPoolSize;
+
+    /**
+     * invokeAll线程池的排队上限，超出时该请求直接失败(对应位置为null)，仅在不支持虚拟线程的JDK上使用
+     */
+    @Value("${rest.invoke-all.queue-size:1024}")
+    private int invokeAllQueueSize;
+
+    /**
+     * invokeAll失败/超时日志的最小间隔(毫秒)，间隔内的其余失败只计数，在下一条日志中带出
+     */
+    @Value("${rest.invoke-all.log-interval:1000}")
+    private long invokeAllLogInterval;
+
+    private ExecutorService invokeAllExecutor;
+
+    private final AtomicLong invokeAllLastLog = new AtomicLong();
+
+    private final LongAdder invokeAllFailureCount = new LongAdder();
+
+    private final LongAdder invokeAllSuppressed = new LongAdder();
+
+    /**
+     * 是否合并并发的相同GET请求(URL、请求头、返回类型均相同)，合并后各调用方共享同一个结果对象
+     */
+    @Value("${rest.single-flight.enabled:false}")
+    private boolean singleFlightEnabled;
+
+    private final SingleFlight getFlight = new SingleFlight();
+
+    /**
+     * 流式方法使用的请求工厂，由RestTemplateConfig提供；不存在时使用restTemplate的请求工厂
+     */
+    @Autowired(required = false)
+    private ClientHttpRequestFactory restStreamingRequestFactory;
+
+    /**
+     * 流式JSON读写，与restTemplate的JSON转换器使用同一个ObjectMapper
+     */
+    private ObjectMapper objectMapper;
+
+    private ObjectWriter elementWriter;
+
+    @PostConstruct
+    public void init() {
+        this.invokeAllExecutor = newInvokeAllExecutor(invokeAllPoolSize, invokeAllQueueSize);
+        this.invokeAllLastLog.set(System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(invokeAllLogInterval));
+        this.objectMapper = new ObjectMapper();
+        for (HttpMessageConverter<?> converter : restTemplate.getMessageConverters()) {
+            if (converter instanceof MappingJackson2HttpMessageConverter) {
+                this.objectMapper = ((MappingJackson2HttpMessageConverter) converter).getObjectMapper();
+                break;
+            }
+        }
+        // 逐个元素写出时不必每个都flush
+        this.elementWriter = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        if (restStreamingRequestFactory == null) {
+            restStreamingRequestFactory = restTemplate.getRequestFactory();
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        invokeAllExecutor.shutdownNow();
+    }
+
     /**
      * POST请求-JSON参数
      *
@@ -75,16 +195,11 @@ public class RestTemplateUtils {
      */
     public <T> T httpGetTraditional(String url, Map params, Map headers, Class<T> clazz) {
         HttpHeaders httpHeaders = new HttpHeaders();
-        params = params == null ? new LinkedHashMap<>() : params;
         if (headers != null) {
             headers.forEach((o1, o2) -> httpHeaders.add(o1.toString(), o2.toString()));
         }
-        StringBuilder sb = new StringBuilder(url);
-        sb.append("?");
-        params.forEach((o1, o2) -> sb.append(o1).append("=").append(o2).append("&"));
-        url = sb.toString().replaceAll("&$+|\\?$+", "");
-        ResponseEntity<T> exchange = restTemplate.exchange(url, HttpMethod.GET, new HttpEntity(null, httpHeaders), clazz);
-        return exchange.getBody();
+        URI uri = HttpUrls.traditional(url, params);
+        return get(uri, httpHeaders, clazz);
     }
 
     /**
@@ -97,15 +212,11 @@ public class RestTemplateUtils {
      */
     public <T> T httpGetPlaceholder(String url, List params, Map headers, Class<T> clazz) {
         HttpHeaders httpHeaders = new HttpHeaders();
-        params = params == null ? new ArrayList<>() : params;
         if (headers != null) {
             headers.forEach((o1, o2) -> httpHeaders.add(o1.toString(), o2.toString()));
         }
-        StringBuilder sb = new StringBuilder(url);
-        params.forEach(o2 -> sb.append("/").append(o2));
-        url = sb.toString().replaceAll("&$+|\\?$+", "");
-        ResponseEntity<T> exchange = restTemplate.exchange(url, HttpMethod.GET, new HttpEntity(null, httpHeaders), clazz);
-        return exchange.getBody();
+        URI uri = HttpUrls.placeholder(url, params);
+        return get(uri, httpHeaders, clazz);
     }
 
     /**
@@ -118,15 +229,11 @@ public class RestTemplateUtils {
      */
     public <T> T httpDeleteTraditional(String url, Map params, Map headers, Class<T> clazz) {
         HttpHeaders httpHeaders = new HttpHeaders();
-        params = params == null ? new LinkedHashMap<>() : params;
         if (headers != null) {
             headers.forEach((o1, o2) -> httpHeaders.add(o1.toString(), o2.toString()));
         }
-        StringBuilder sb = new StringBuilder(url);
-        sb.append("?");
-        params.forEach((o1, o2) -> sb.append(o1).append("=").append(o2).append("&"));
-        url = sb.toString().replaceAll("&$+|\\?$+", "");
-        ResponseEntity<T> exchange = restTemplate.exchange(url, HttpMethod.DELETE, new HttpEntity(null, httpHeaders), clazz);
+        URI uri = HttpUrls.traditional(url, params);
+        ResponseEntity<T> exchange = restTemplate.exchange(uri, HttpMethod.DELETE, new HttpEntity(null, httpHeaders), clazz);
         return exchange.getBody();
     }
 
@@ -140,14 +247,11 @@ public class RestTemplateUtils {
      */
     public <T> T httpDeletePlaceholder(String url, List params, Map headers, Class<T> clazz) {
         HttpHeaders httpHeaders = new HttpHeaders();
-        params = params == null ? new ArrayList<>() : params;
         if (headers != null) {
             headers.forEach((o1, o2) -> httpHeaders.add(o1.toString(), o2.toString()));
         }
-        StringBuilder sb = new StringBuilder(url);
-        params.forEach(o2 -> sb.append("/").append(o2));
-        url = sb.toString().replaceAll("&$+|\\?$+", "");
-        ResponseEntity<T> exchange = restTemplate.exchange(url, HttpMethod.DELETE, new HttpEntity(null, httpHeaders), clazz);
+        URI uri = HttpUrls.placeholder(url, params);
+        ResponseEntity<T> exchange = restTemplate.exchange(uri, HttpMethod.DELETE, new HttpEntity(null, httpHeaders), clazz);
         return exchange.getBody();
     }
 
@@ -188,4 +292,372 @@ public class RestTemplateUtils {
         // json方式传参
         return restTemplate.patchForObject(url, new HttpEntity(stringObjectLinkedMultiValueMap, httpHeaders), clazz);
     }
+
+    // =============================流式============================
+
+    /**
+     * GET请求-?号参数，响应体以流的形式返回，不整体读入内存
+     * <p>
+     * 调用方必须关闭返回的流，关闭时归还连接；4xx/5xx时与其他方法一样抛出异常
+     *
+     * @param url
+     * @param params
+     * @param headers
+     * @return 响应体
+     */
+    public InputStream httpGetInputStream(String url, Map params, Map headers) {
+        ClientHttpResponse response = open(HttpMethod.GET, HttpUrls.traditional(url, params), headers, null, null);
+        return responseBody(response);
+    }
+
+    /**
+     * GET请求-?号参数，响应为JSON数组时逐个元素解析，内存占用与数组长度无关；
+     * 响应为换行分隔的多个JSON(application/stream+json)时逐个解析，单个JSON对象时作为唯一元素
+     * <p>
+     * 调用方必须关闭返回的Stream(try-with-resources)，关闭时归还连接
+     *
+     * @param url
+     * @param params
+     * @param headers
+     * @param clazz   元素类型
+     * @return 元素流
+     */
+    public <T> Stream<T> httpGetJsonStream(String url, Map params, Map headers, Class<T> clazz) {
+        ClientHttpResponse response = open(HttpMethod.GET, HttpUrls.traditional(url, params), headers, null, null);
+        return jsonElements(response, clazz);
+    }
+
+    /**
+     * POST请求-流式请求体，边读body边发送，响应体以流的形式返回
+     * <p>
+     * Content-Type取headers中的值，没有时为application/octet-stream；调用方负责关闭body及返回的流
+     *
+     * @param url
+     * @param body    请求体
+     * @param headers
+     * @return 响应体
+     */
+    public InputStream httpPostInputStream(String url, InputStream body, Map headers) {
+        ClientHttpResponse response = open(HttpMethod.POST, HttpUrls.traditional(url, null), headers,
+                MediaType.APPLICATION_OCTET_STREAM, out -> StreamUtils.copy(body, out));
+        return responseBody(response);
+    }
+
+    /**
+     * POST请求-JSON数组，elements逐个序列化后发送，不在内存中拼出整个数组；响应为JSON数组时逐个元素解析
+     * <p>
+     * 调用方必须关闭返回的Stream(try-with-resources)，关闭时归还连接
+     *
+     * @param url
+     * @param elements 数组元素
+     * @param headers
+     * @param clazz    响应元素类型
+     * @return 响应元素流
+     */
+    public <T> Stream<T> httpPostJsonStream(String url, Iterator<?> elements, Map headers, Class<T> clazz) {
+        ClientHttpResponse response = open(HttpMethod.POST, HttpUrls.traditional(url, null), headers,
+                MediaType.APPLICATION_JSON, out -> {
+                    try (JsonGenerator generator = objectMapper.getFactory().createGenerator(StreamUtils.nonClosing(out))) {
+                        generator.writeStartArray();
+                        while (elements.hasNext()) {
+                            elementWriter.writeValue(generator, elements.next());
+                        }
+                        generator.writeEndArray();
+                    }
+                });
+        return jsonElements(response, clazz);
+    }
+
+    /**
+     * 发送请求并检查状态码，返回未读取的响应；流式请求工厂在发送时才调用body写出请求体
+     */
+    private ClientHttpResponse open(HttpMethod method, URI uri, Map headers, MediaType defaultContentType,
+                                    StreamingHttpOutputMessage.Body body) {
+        ClientHttpResponse response;
+        try {
+            ClientHttpRequest request = restStreamingRequestFactory.createRequest(uri, method);
+            if (headers != null) {
+                headers.forEach((o1, o2) -> request.getHeaders().add(o1.toString(), o2.toString()));
+            }
+            if (body != null) {
+                if (request.getHeaders().getContentType() == null) {
+                    request.getHeaders().setContentType(defaultContentType);
+                }
+                if (request instanceof StreamingHttpOutputMessage) {
+                    ((StreamingHttpOutputMessage) request).setBody(body);
+                } else {
+                    body.writeTo(request.getBody());
+                }
+            }
+            response = request.execute();
+        } catch (IOException e) {
+            throw new ResourceAccessException("I/O error on " + method + " request for \"" + uri + "\": " + e.getMessage(), e);
+        }
+        try {
+            if (restTemplate.getErrorHandler().hasError(response)) {
+                restTemplate.getErrorHandler().handleError(uri, method, response);
+            }
+        } catch (IOException e) {
+            response.close();
+            throw new ResourceAccessException("I/O error on " + method + " request for \"" + uri + "\": " + e.getMessage(), e);
+        } catch (RuntimeException e) {
+            response.close();
+            throw e;
+        }
+        return response;
+    }
+
+    /**
+     * 关闭流时关闭响应
+     */
+    private InputStream responseBody(ClientHttpResponse response) {
+        try {
+            return new FilterInputStream(response.getBody()) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        response.close();
+                    }
+                }
+            };
+        } catch (IOException e) {
+            response.close();
+            throw new ResourceAccessException("I/O error reading response: " + e.getMessage(), e);
+        }
+    }
+
+    private <T> Stream<T> jsonElements(ClientHttpResponse response, Class<T> clazz) {
+        JsonParser parser;
+        JsonToken first;
+        try {
+            parser = objectMapper.getFactory().createParser(response.getBody());
+            first = parser.nextToken();
+        } catch (IOException e) {
+            response.close();
+            throw new ResourceAccessException("I/O error reading response: " + e.getMessage(), e);
+        }
+        boolean array = first == JsonToken.START_ARRAY;
+        Spliterator<T> spliterator = new Spliterators.AbstractSpliterator<T>(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL) {
+            /**
+             * 非数组时第一个值的起始token已经读出
+             */
+            private JsonToken next = array ? null : first;
+
+            @Override
+            public boolean tryAdvance(Consumer<? super T> action) {
+                try {
+                    JsonToken token = next != null ? next : parser.nextToken();
+                    next = null;
+                    if (token == null || (array && token == JsonToken.END_ARRAY)) {
+                        return false;
+                    }
+                    action.accept(objectMapper.readValue(parser, clazz));
+                    return true;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        };
+        return StreamSupport.stream(spliterator, false).onClose(() -> {
+            try {
+                parser.close();
+            } catch (IOException e) {
+                logger.warn("关闭JSON流失败", e);
+            } finally {
+                response.close();
+            }
+        });
+    }
+
+    /**
+     * 获取GET请求合并统计，可用于查看实际请求及被合并的次数
+     *
+     * @return 未启用时计数始终为0
+     */
+    public SingleFlight getSingleFlight() {
+        return getFlight;
+    }
+
+    private <T> T get(URI uri, HttpHeaders httpHeaders, Class<T> clazz) {
+        Supplier<T> call = () -> {
+            ResponseEntity<T> exchange = restTemplate.exchange(uri, HttpMethod.GET, new HttpEntity(null, httpHeaders), clazz);
+            return exchange.getBody();
+        };
+        return singleFlightEnabled ? getFlight.execute(clazz.getName() + " " + uri + " " + httpHeaders, call) : call.get();
+    }
+
+    /**
+     * 并发执行多个请求，耗时约为其中最慢的一个而不是全部之和
+     * <p>
+     * 返回结果与calls顺序一致；某个请求失败、超过自身超时或超过整体超时时，对应位置为null。
+     * 超时的请求会被中断：虚拟线程上会随之关闭连接，平台线程上则要等到RestTemplate的读超时才释放线程
+     *
+     * @param calls   请求列表
+     * @param timeout 整体超时，从调用时开始计算
+     * @param unit    时间单位
+     * @return 与calls一一对应的结果
+     */
+    public <T> List<T> invokeAll(List<? extends HttpCall<? extends T>> calls, long timeout, TimeUnit unit) {
+        long start = System.nanoTime();
+        long deadline = start + unit.toNanos(timeout);
+        List<Future<? extends T>> futures = new ArrayList<>(calls.size());
+        for (HttpCall<? extends T> call : calls) {
+            try {
+                futures.add(invokeAllExecutor.submit(() -> call.request.apply(this)));
+            } catch (RejectedExecutionException e) {
+                // 排队已满
+                CompletableFuture<T> rejected = new CompletableFuture<>();
+                rejected.completeExceptionally(e);
+                futures.add(rejected);
+            }
+        }
+        List<T> results = new ArrayList<>(calls.size());
+        for (int i = 0; i < futures.size(); i++) {
+            Future<? extends T> future = futures.get(i);
+            HttpCall<? extends T> call = calls.get(i);
+            long callTimeout = call.timeoutNanos;
+            long callDeadline = callTimeout > 0 ? Math.min(deadline, start + callTimeout) : deadline;
+            try {
+                results.add(future.get(Math.max(0, callDeadline - System.nanoTime()), TimeUnit.NANOSECONDS));
+            } catch (InterruptedException e) {
+                // 调用方被中断，剩余请求全部取消
+                Thread.currentThread().interrupt();
+                for (int j = i; j < futures.size(); j++) {
+                    futures.get(j).cancel(true);
+                    results.add(null);
+                }
+                break;
+            } catch (TimeoutException | CancellationException e) {
+                future.cancel(true);
+                invokeAllFailed("请求超时", call, null);
+                results.add(null);
+            } catch (ExecutionException e) {
+                invokeAllFailed("请求失败", call, e.getCause());
+                results.add(null);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * @return invokeAll中失败、超时及被拒绝的请求数
+     */
+    public long getInvokeAllFailureCount() {
+        return invokeAllFailureCount.sum();
+    }
+
+    /**
+     * 限流记录invokeAll的失败，每log-interval最多一条WARN，其余只计数
+     */
+    private void invokeAllFailed(String reason, HttpCall<?> call, Throwable e) {
+        invokeAllFailureCount.increment();
+        long now = System.nanoTime();
+        long last = invokeAllLastLog.get();
+        if (now - last < TimeUnit.MILLISECONDS.toNanos(invokeAllLogInterval) || !invokeAllLastLog.compareAndSet(last, now)) {
+            invokeAllSuppressed.increment();
+            return;
+        }
+        long suppressed = invokeAllSuppressed.sumThenReset();
+        if (suppressed > 0) {
+            logger.warn("invokeAll {}: {}，此前略过{}次失败", reason, call, suppressed, e);
+        } else {
+            logger.warn("invokeAll {}: {}", reason, call, e);
+        }
+    }
+
+    /**
+     * JDK 21+使用每个任务一个虚拟线程；更早的JDK上使用固定大小的线程池，超出的请求排队等待，排队数有上限
+     */
+    private static ExecutorService newInvokeAllExecutor(int poolSize, int queueSize) {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            AtomicInteger index = new AtomicInteger();
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(poolSize, poolSize, 60L, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(queueSize), r -> {
+                Thread thread = new Thread(r, "rest-invoke-all-" + index.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            executor.allowCoreThreadTimeOut(true);
+            return executor;
+        }
+    }
+
+    /**
+     * invokeAll中的一个请求
+     *
+     * @param <T> 响应类型
+     */
+    public static final class HttpCall<T> {
+
+        private final String description;
+
+        private final Function<RestTemplateUtils, T> request;
+
+        private final long timeoutNanos;
+
+        private HttpCall(String description, Function<RestTemplateUtils, T> request, long timeoutNanos) {
+            this.description = description;
+            this.request = request;
+            this.timeoutNanos = timeoutNanos;
+        }
+
+        /**
+         * 任意请求，如 HttpCall.of("user", utils -> utils.httpGetPlaceholder(url, params, null, User.class))
+         *
+         * @param description 失败或超时时日志中的描述
+         * @param request     请求
+         * @return
+         */
+        public static <T> HttpCall<T> of(String description, Function<RestTemplateUtils, T> request) {
+            return new HttpCall<>(description, request, 0);
+        }
+
+        /**
+         * GET请求-?号参数
+         */
+        public static <T> HttpCall<T> getTraditional(String url, Map params, Map headers, Class<T> clazz) {
+            return of("GET " + url, utils -> utils.httpGetTraditional(url, params, headers, clazz));
+        }
+
+        /**
+         * GET请求-分隔符参数
+         */
+        public static <T> HttpCall<T> getPlaceholder(String url, List params, Map headers, Class<T> clazz) {
+            return of("GET " + url, utils -> utils.httpGetPlaceholder(url, params, headers, clazz));
+        }
+
+        /**
+         * POST请求-JSON参数
+         */
+        public static <T> HttpCall<T> postJson(String url, Map params, Map headers, Class<T> clazz) {
+            return of("POST " + url, utils -> utils.httpPostJson(url, params, headers, clazz));
+        }
+
+        /**
+         * POST请求-FROM参数
+         */
+        public static <T> HttpCall<T> postForm(String url, Map params, Map headers, Class<T> clazz) {
+            return of("POST " + url, utils -> utils.httpPostForm(url, params, headers, clazz));
+        }
+
+        /**
+         * 单个请求的超时，不超过invokeAll的整体超时
+         *
+         * @param timeout 超时时间，从invokeAll调用时开始计算
+         * @param unit    时间单位
+         * @return 新的HttpCall
+         */
+        public HttpCall<T> timeout(long timeout, TimeUnit unit) {
+            return new HttpCall<>(description, request, unit.toNanos(timeout));
+        }
+
+        @Override
+        public String toString() {
+            return description;
+        }
+    }
 }
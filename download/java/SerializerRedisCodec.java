@@ -0,0 +1,48 @@
+package com.isoftstone.hgy.utils.redis;
+
+import io.lettuce.core.codec.RedisCodec;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * lettuce编解码，key按UTF-8字符串，value使用RedisTemplate的value序列化方式，
+ * 因此AsyncRedisUtil与RedisUtil读写的数据互通
+ *
+ * @author Colin.Ye
+ * @version 1.0
+ * @ClassName SerializerRedisCodec
+ * @date 2019/8/22
+ **/
+public class SerializerRedisCodec implements RedisCodec<String, Object> {
+
+    private final RedisSerializer<Object> valueSerializer;
+
+    public SerializerRedisCodec(RedisSerializer<Object> valueSerializer) {
+        this.valueSerializer = valueSerializer;
+    }
+
+    @Override
+    public String decodeKey(ByteBuffer bytes) {
+        return StandardCharsets.UTF_8.decode(bytes).toString();
+    }
+
+    @Override
+    public Object decodeValue(ByteBuffer bytes) {
+        byte[] array = new byte[bytes.remaining()];
+        bytes.get(array);
+        return valueSerializer.deserialize(array);
+    }
+
+    @Override
+    public ByteBuffer encodeKey(String key) {
+        return ByteBuffer.wrap(key.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public ByteBuffer encodeValue(Object value) {
+        byte[] bytes = valueSerializer.serialize(value);
+        return ByteBuffer.wrap(bytes == null ? new byte[0] : bytes);
+    }
+}
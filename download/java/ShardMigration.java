@@ -0,0 +1,214 @@
+package com.isoftstone.ismart.analysis.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisShardInfo;
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ScanResult;
+import redis.clients.jedis.ShardedJedis;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.util.Hashing;
+import redis.clients.util.Sharded;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 新增节点后的后台数据迁移
+ * <p>
+ * 逐个扫描原有节点，按新的hash环计算归属，归属于新节点的key通过MIGRATE移过去。
+ * 切换后新写入的数据已直接落在新节点，目标已存在(BUSYKEY)时按类型处理：
+ * <ul>
+ * <li>string：以新节点为准删除旧值。计数器(INCR)切换后在新节点从0开始累加，旧的累计值会丢失，
+ * 需要精确计数时迁移期间应停止写入</li>
+ * <li>hash、set：合并到新节点(HSETNX/SADD，同一字段以新节点为准)后删除旧数据</li>
+ * <li>list、zset：无法判断合并顺序及分数含义，不处理，保留在原节点并记录日志，由使用方核对</li>
+ * </ul>
+ * 迁移完成前，尚未迁移的key在新节点上读不到，表现为缓存未命中
+ *
+ * @author Colin.Ye
+ * @version 1.0
+ * @ClassName ShardMigration
+ * @date 2018/1/12
+ **/
+public class ShardMigration implements Runnable {
+
+    private static final Logger logger = LoggerFactory.getLogger(ShardMigration.class);
+
+    private final List<JedisShardInfo> sourceShards;
+
+    private final List<JedisShardInfo> targetRing;
+
+    private final JedisShardInfo target;
+
+    private final int db;
+
+    private final int batchSize;
+
+    private final int timeoutMillis;
+
+    private final Runnable onComplete;
+
+    private final LongAdder scannedCount = new LongAdder();
+    private final LongAdder migratedCount = new LongAdder();
+    private final LongAdder conflictCount = new LongAdder();
+    private final LongAdder mergedCount = new LongAdder();
+    private final LongAdder skippedCount = new LongAdder();
+    private final LongAdder failedCount = new LongAdder();
+
+    private volatile boolean done;
+
+    /**
+     * @param sourceShards 原有节点
+     * @param targetRing   新增节点后的全部节点
+     * @param target       新增节点
+     * @param db           库
+     * @param batchSize    每次SCAN的数量
+     * @param onComplete   迁移结束后执行，用于关闭旧连接池
+     */
+    public ShardMigration(List<JedisShardInfo> sourceShards, List<JedisShardInfo> targetRing, JedisShardInfo target,
+                          int db, int batchSize, Runnable onComplete) {
+        this.sourceShards = sourceShards;
+        this.targetRing = targetRing;
+        this.target = target;
+        this.db = db;
+        this.batchSize = batchSize;
+        this.timeoutMillis = target.getSoTimeout();
+        this.onComplete = onComplete;
+    }
+
+    @Override
+    public void run() {
+        ShardedJedis ring = new ShardedJedis(targetRing, Hashing.MURMUR_HASH, Sharded.DEFAULT_KEY_TAG_PATTERN);
+        try {
+            for (JedisShardInfo source : sourceShards) {
+                migrate(source, ring);
+            }
+            logger.info("redis分片迁移完成: {}", this);
+        } catch (Exception e) {
+            logger.error("redis分片迁移中断: " + this, e);
+        } finally {
+            ring.close();
+            done = true;
+            if (onComplete != null) {
+                onComplete.run();
+            }
+        }
+    }
+
+    private void migrate(JedisShardInfo source, ShardedJedis ring) {
+        try (Jedis jedis = source.createResource(); Jedis targetJedis = target.createResource()) {
+            ScanParams params = new ScanParams().count(batchSize);
+            String cursor = ScanParams.SCAN_POINTER_START;
+            do {
+                ScanResult<String> result = jedis.scan(cursor, params);
+                for (String key : result.getResult()) {
+                    scannedCount.increment();
+                    if (ring.getShardInfo(key).getName().equals(target.getName())) {
+                        move(jedis, targetJedis, key);
+                    }
+                }
+                cursor = result.getStringCursor();
+            } while (!ScanParams.SCAN_POINTER_START.equals(cursor));
+        }
+    }
+
+    private void move(Jedis source, Jedis targetJedis, String key) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                source.migrate(target.getHost(), target.getPort(), key, db, timeoutMillis);
+                migratedCount.increment();
+                return;
+            } catch (JedisDataException e) {
+                String message = String.valueOf(e.getMessage());
+                if (message.startsWith("BUSYKEY") || message.contains("Target key name is busy")) {
+                    // 切换后新节点已写入更新的数据，或上一次IOERR时数据其实已经到达
+                    try {
+                        resolveConflict(source, targetJedis, key);
+                    } catch (JedisDataException conflict) {
+                        // 新旧节点上的类型不同(WRONGTYPE)，保留旧数据
+                        logger.warn("redis key迁移冲突无法合并: {} {}", key, conflict.getMessage());
+                        failedCount.increment();
+                    }
+                    return;
+                }
+                if (!message.startsWith("IOERR") || attempt >= 3) {
+                    logger.warn("redis key迁移失败: {} {}", key, message);
+                    failedCount.increment();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void resolveConflict(Jedis source, Jedis targetJedis, String key) {
+        String type = source.type(key);
+        if ("string".equals(type)) {
+            source.del(key);
+            conflictCount.increment();
+        } else if ("hash".equals(type)) {
+            for (Map.Entry<String, String> entry : source.hgetAll(key).entrySet()) {
+                targetJedis.hsetnx(key, entry.getKey(), entry.getValue());
+            }
+            source.del(key);
+            mergedCount.increment();
+        } else if ("set".equals(type)) {
+            Set<String> members = source.smembers(key);
+            if (!members.isEmpty()) {
+                targetJedis.sadd(key, members.toArray(new String[0]));
+            }
+            source.del(key);
+            mergedCount.increment();
+        } else if (!"none".equals(type)) {
+            logger.warn("redis key迁移冲突，{}类型不合并，保留在原节点: {}", type, key);
+            skippedCount.increment();
+        }
+    }
+
+    public boolean isDone() {
+        return done;
+    }
+
+    public long getScannedCount() {
+        return scannedCount.sum();
+    }
+
+    public long getMigratedCount() {
+        return migratedCount.sum();
+    }
+
+    /**
+     * @return 目标已存在时以新节点为准删除的string数量
+     */
+    public long getConflictCount() {
+        return conflictCount.sum();
+    }
+
+    /**
+     * @return 目标已存在时合并到新节点的hash、set数量
+     */
+    public long getMergedCount() {
+        return mergedCount.sum();
+    }
+
+    /**
+     * @return 目标已存在时保留在原节点的list、zset数量
+     */
+    public long getSkippedCount() {
+        return skippedCount.sum();
+    }
+
+    public long getFailedCount() {
+        return failedCount.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "ShardMigration{target=" + target.getName() + ", done=" + done + ", scanned=" + getScannedCount()
+                + ", migrated=" + getMigratedCount() + ", conflict=" + getConflictCount() + ", merged=" + getMergedCount()
+                + ", skipped=" + getSkippedCount() + ", failed=" + getFailedCount() + "}";
+    }
+}
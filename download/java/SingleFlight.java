@@ -0,0 +1,98 @@
+package com.isoftstone.hgy.utils.redis;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 相同key的并发调用合并为一次
+ * <p>
+ * 第一个调用方执行loader，执行期间到达的相同key的调用方等待并共享其结果(或异常)；执行结束后即移除，
+ * 之后的调用重新执行，不做缓存。共享的结果对象不要修改
+ *
+ * @author Colin.Ye
+ * @version 1.0
+ * @ClassName SingleFlight
+ * @date 2019/8/22
+ **/
+public class SingleFlight {
+
+    private final ConcurrentMap<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+
+    private final LongAdder executedCount = new LongAdder();
+    private final LongAdder coalescedCount = new LongAdder();
+
+    /**
+     * 执行或加入进行中的调用
+     *
+     * @param key    调用标识，相同标识的并发调用只执行一次
+     * @param loader 实际调用
+     * @return loader的结果
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T execute(String key, Supplier<T> loader) {
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            coalescedCount.increment();
+            try {
+                return (T) existing.join();
+            } catch (CompletionException e) {
+                throw rethrow(e.getCause());
+            }
+        }
+        executedCount.increment();
+        try {
+            T value = loader.get();
+            future.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, future);
+        }
+    }
+
+    // =============================统计============================
+
+    /**
+     * @return 实际执行loader的次数
+     */
+    public long getExecutedCount() {
+        return executedCount.sum();
+    }
+
+    /**
+     * @return 被合并、直接共享结果的调用次数
+     */
+    public long getCoalescedCount() {
+        return coalescedCount.sum();
+    }
+
+    /**
+     * @return 当前进行中的key数量
+     */
+    public int getInFlightCount() {
+        return inFlight.size();
+    }
+
+    @Override
+    public String toString() {
+        return "SingleFlight{executed=" + getExecutedCount() + ", coalesced=" + getCoalescedCount()
+                + ", inFlight=" + getInFlightCount() + "}";
+    }
+
+    private static RuntimeException rethrow(Throwable cause) {
+        if (cause instanceof RuntimeException) {
+            return (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        return new CompletionException(cause);
+    }
+}
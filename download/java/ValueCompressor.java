@@ -0,0 +1,251 @@
+package com.isoftstone.hgy.utils.redis;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 大value压缩
+ * <p>
+ * 超过阈值的value压缩后写入，格式: 0x1F 0x9D 标志位 原始长度(4字节) deflate数据；
+ * 读取时没有该头部的数据原样返回，因此开启前写入的数据不受影响。
+ * 可选预置字典(同类JSON的典型样本)，对小于几KB的value提升明显，所有节点必须使用同一份字典。
+ * 头部中的原始长度超过maxLength或超出deflate可能的压缩比时视为损坏，不按其分配内存。
+ *
+ * @author Colin.Ye
+ * @version 1.0
+ * @ClassName ValueCompressor
+ * @date 2019/8/22
+ **/
+public class ValueCompressor {
+
+    private static final byte MAGIC_0 = 0x1F;
+    private static final byte MAGIC_1 = (byte) 0x9D;
+    private static final byte FLAG_DICTIONARY = 0x01;
+    private static final int HEADER_LENGTH = 7;
+
+    /**
+     * deflate的最大压缩比约为1032:1
+     */
+    private static final int MAX_DEFLATE_RATIO = 1032;
+
+    /**
+     * 默认解压后最大长度 64MB
+     */
+    public static final int DEFAULT_MAX_LENGTH = 64 * 1024 * 1024;
+
+    private final int threshold;
+
+    private final int maxLength;
+
+    private final byte[] dictionary;
+
+    private final ThreadLocal<Deflater> deflaters;
+
+    private final ThreadLocal<Inflater> inflaters = ThreadLocal.withInitial(() -> new Inflater(true));
+
+    private final LongAdder compressedCount = new LongAdder();
+    private final LongAdder skippedCount = new LongAdder();
+    private final LongAdder bytesBefore = new LongAdder();
+    private final LongAdder bytesAfter = new LongAdder();
+    private final LongAdder compressNanos = new LongAdder();
+    private final LongAdder decompressedCount = new LongAdder();
+    private final LongAdder decompressNanos = new LongAdder();
+
+    /**
+     * 解压后最大长度为DEFAULT_MAX_LENGTH
+     *
+     * @param threshold  超过该字节数才压缩
+     * @param level      压缩级别 1-9，1最快
+     * @param dictionary 预置字典 可以为null
+     */
+    public ValueCompressor(int threshold, int level, byte[] dictionary) {
+        this(threshold, level, dictionary, DEFAULT_MAX_LENGTH);
+    }
+
+    /**
+     * @param threshold  超过该字节数才压缩
+     * @param level      压缩级别 1-9，1最快
+     * @param dictionary 预置字典 可以为null
+     * @param maxLength  解压后最大长度，超过时视为数据损坏
+     */
+    public ValueCompressor(int threshold, int level, byte[] dictionary, int maxLength) {
+        this.threshold = threshold;
+        this.maxLength = maxLength;
+        this.dictionary = dictionary == null || dictionary.length == 0 ? null : dictionary;
+        this.deflaters = ThreadLocal.withInitial(() -> new Deflater(level, true));
+    }
+
+    /**
+     * 压缩，未超过阈值或压缩后没有变小时原样返回
+     *
+     * @param bytes 原始数据
+     * @return 压缩后的数据
+     */
+    public byte[] compress(byte[] bytes) {
+        if (bytes == null || bytes.length < threshold) {
+            skippedCount.increment();
+            return bytes;
+        }
+        long start = System.nanoTime();
+        try {
+            return deflate(bytes);
+        } finally {
+            compressNanos.add(System.nanoTime() - start);
+        }
+    }
+
+    private byte[] deflate(byte[] bytes) {
+        Deflater deflater = deflaters.get();
+        deflater.reset();
+        if (dictionary != null) {
+            deflater.setDictionary(dictionary);
+        }
+        deflater.setInput(bytes);
+        deflater.finish();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 4 + HEADER_LENGTH);
+        out.write(MAGIC_0);
+        out.write(MAGIC_1);
+        out.write(dictionary != null ? FLAG_DICTIONARY : 0);
+        out.write(bytes.length >>> 24);
+        out.write(bytes.length >>> 16);
+        out.write(bytes.length >>> 8);
+        out.write(bytes.length);
+        byte[] buffer = new byte[8192];
+        while (!deflater.finished()) {
+            int n = deflater.deflate(buffer);
+            out.write(buffer, 0, n);
+            if (out.size() >= bytes.length) {
+                skippedCount.increment();
+                return bytes;
+            }
+        }
+        byte[] compressed = out.toByteArray();
+        compressedCount.increment();
+        bytesBefore.add(bytes.length);
+        bytesAfter.add(compressed.length);
+        return compressed;
+    }
+
+    /**
+     * 解压，没有压缩头部的数据原样返回
+     *
+     * @param bytes 读取到的数据
+     * @return 原始数据
+     */
+    public byte[] decompress(byte[] bytes) {
+        if (!isCompressed(bytes)) {
+            return bytes;
+        }
+        int length = ((bytes[3] & 0xFF) << 24) | ((bytes[4] & 0xFF) << 16) | ((bytes[5] & 0xFF) << 8) | (bytes[6] & 0xFF);
+        if (length < 0 || length > maxLength || (long) length > (long) (bytes.length - HEADER_LENGTH) * MAX_DEFLATE_RATIO) {
+            throw new IllegalStateException("压缩头部中的长度无效: " + length + "，数据" + bytes.length + "字节，上限" + maxLength);
+        }
+        long start = System.nanoTime();
+        try {
+            return inflate(bytes, length);
+        } finally {
+            decompressedCount.increment();
+            decompressNanos.add(System.nanoTime() - start);
+        }
+    }
+
+    private byte[] inflate(byte[] bytes, int length) {
+        Inflater inflater = inflaters.get();
+        inflater.reset();
+        if ((bytes[2] & FLAG_DICTIONARY) != 0) {
+            if (dictionary == null) {
+                throw new IllegalStateException("数据使用预置字典压缩，但未配置字典");
+            }
+            inflater.setDictionary(dictionary);
+        }
+        inflater.setInput(bytes, HEADER_LENGTH, bytes.length - HEADER_LENGTH);
+        byte[] result = new byte[length];
+        try {
+            int offset = 0;
+            while (offset < length && !inflater.finished()) {
+                int n = inflater.inflate(result, offset, length - offset);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                offset += n;
+            }
+            if (offset != length) {
+                throw new IllegalStateException("解压后长度不符: " + offset + "/" + length);
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("解压失败: " + e.getMessage(), e);
+        }
+        return result;
+    }
+
+    /**
+     * 判断数据是否带有压缩头部
+     */
+    public static boolean isCompressed(byte[] bytes) {
+        return bytes != null && bytes.length >= HEADER_LENGTH && bytes[0] == MAGIC_0 && bytes[1] == MAGIC_1;
+    }
+
+    // =============================统计============================
+
+    public long getCompressedCount() {
+        return compressedCount.sum();
+    }
+
+    public long getSkippedCount() {
+        return skippedCount.sum();
+    }
+
+    /**
+     * @return 被压缩的value压缩前的总字节数
+     */
+    public long getBytesBefore() {
+        return bytesBefore.sum();
+    }
+
+    /**
+     * @return 被压缩的value压缩后的总字节数
+     */
+    public long getBytesAfter() {
+        return bytesAfter.sum();
+    }
+
+    /**
+     * @return 压缩耗时(纳秒)，包括压缩后没有变小而放弃的，不包括未达阈值直接跳过的
+     */
+    public long getCompressNanos() {
+        return compressNanos.sum();
+    }
+
+    /**
+     * @return 解压次数
+     */
+    public long getDecompressedCount() {
+        return decompressedCount.sum();
+    }
+
+    /**
+     * @return 解压耗时(纳秒)
+     */
+    public long getDecompressNanos() {
+        return decompressNanos.sum();
+    }
+
+    /**
+     * @return 压缩比(压缩后/压缩前) 没有压缩过时返回1
+     */
+    public double getRatio() {
+        long before = getBytesBefore();
+        return before == 0 ? 1 : (double) getBytesAfter() / before;
+    }
+
+    @Override
+    public String toString() {
+        return "ValueCompressor{compressed=" + getCompressedCount() + ", skipped=" + getSkippedCount()
+                + ", bytesBefore=" + getBytesBefore() + ", bytesAfter=" + getBytesAfter() + ", ratio=" + getRatio()
+                + ", compressMs=" + getCompressNanos() / 1000000 + ", decompressed=" + getDecompressedCount()
+                + ", decompressMs=" + getDecompressNanos() / 1000000 + "}";
+    }
+}
@@ -0,0 +1,52 @@
+package com.isoftstone.hgy.benchmarks;
+
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.ServerSocket;
+
+/**
+ * 压测用内嵌redis
+ *
+ * @author Colin.Ye
+ * @version 1.0
+ * @ClassName EmbeddedRedis
+ * @date 2019/8/22
+ **/
+final class EmbeddedRedis {
+
+    private final RedisServer server;
+
+    private final int port;
+
+    private EmbeddedRedis(int port) {
+        this.port = port;
+        this.server = RedisServer.builder().port(port).setting("maxmemory 256mb").setting("save \"\"").build();
+    }
+
+    /**
+     * 在空闲端口启动
+     */
+    static EmbeddedRedis start() {
+        EmbeddedRedis redis = new EmbeddedRedis(freePort());
+        redis.server.start();
+        return redis;
+    }
+
+    int getPort() {
+        return port;
+    }
+
+    void stop() {
+        server.stop();
+    }
+
+    static int freePort() {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
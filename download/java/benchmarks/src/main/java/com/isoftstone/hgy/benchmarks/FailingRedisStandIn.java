@@ -0,0 +1,105 @@
+package com.isoftstone.hgy.benchmarks;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 模拟故障中的redis：接受连接，对每条命令立即返回-LOADING错误(与redis重启加载数据时一致)
+ * <p>
+ * 连接保持可用，每次调用都会很快失败，用于压测错误处理路径本身的开销
+ *
+ * @author Colin.Ye
+ * @version 1.0
+ * @ClassName FailingRedisStandIn
+ * @date 2019/8/22
+ **/
+final class FailingRedisStandIn implements AutoCloseable {
+
+    private static final byte[] ERROR = "-LOADING Redis is loading the dataset in memory\r\n".getBytes(StandardCharsets.US_ASCII);
+
+    private final ServerSocket server;
+
+    private FailingRedisStandIn(ServerSocket server) {
+        this.server = server;
+    }
+
+    /**
+     * 在空闲端口启动
+     */
+    static FailingRedisStandIn start() {
+        try {
+            FailingRedisStandIn standIn = new FailingRedisStandIn(new ServerSocket(0));
+            Thread acceptor = new Thread(standIn::accept, "failing-redis-accept");
+            acceptor.setDaemon(true);
+            acceptor.start();
+            return standIn;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    int getPort() {
+        return server.getLocalPort();
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.close();
+    }
+
+    private void accept() {
+        while (!server.isClosed()) {
+            try {
+                Socket socket = server.accept();
+                socket.setTcpNoDelay(true);
+                Thread handler = new Thread(() -> serve(socket), "failing-redis-" + socket.getPort());
+                handler.setDaemon(true);
+                handler.start();
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    private static void serve(Socket socket) {
+        try (Socket s = socket) {
+            InputStream in = new BufferedInputStream(s.getInputStream());
+            OutputStream out = s.getOutputStream();
+            String line;
+            while ((line = readLine(in)) != null) {
+                if (line.startsWith("*")) {
+                    // 跳过RESP数组中的各个参数
+                    int args = Integer.parseInt(line.substring(1));
+                    for (int i = 0; i < args; i++) {
+                        int length = Integer.parseInt(readLine(in).substring(1));
+                        for (int skipped = 0; skipped < length + 2; skipped++) {
+                            in.read();
+                        }
+                    }
+                }
+                out.write(ERROR);
+                out.flush();
+            }
+        } catch (IOException | RuntimeException ignore) {
+        }
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        int c;
+        while ((c = in.read()) != -1) {
+            if (c == '\r') {
+                in.read();
+                return sb.toString();
+            }
+            sb.append((char) c);
+        }
+        return null;
+    }
+}
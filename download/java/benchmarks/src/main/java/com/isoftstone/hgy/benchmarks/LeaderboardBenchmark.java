@@ -0,0 +1,131 @@
+package com.isoftstone.hgy.benchmarks;
+
+import com.isoftstone.ismart.analysis.util.Leaderboard;
+import com.isoftstone.ismart.analysis.util.LowRedisUtil;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.core.env.MapPropertySource;
+import redis.clients.jedis.ShardedJedis;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 大排行榜(默认100万成员)上的查询与写入(内嵌redis)
+ * <p>
+ * 取第一名：原zrevrangeByscore取回整个集合 vs ZREVRANGE 0 0；
+ * top10：每次查询redis vs Leaderboard本地缓存；rank：ZREVRANK+ZSCORE一次管道；
+ * 100个成员加分：逐个zincrby(每次借还连接) vs zincrbyAll管道
+ *
+ * @author Colin.Ye
+ * @version 1.0
+ * @ClassName LeaderboardBenchmark
+ * @date 2019/8/22
+ **/
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class LeaderboardBenchmark {
+
+    private static final String KEY = "bench:leaderboard";
+
+    private static final int BATCH = 100;
+
+    @Param({"1000000"})
+    public int members;
+
+    private EmbeddedRedis redis;
+
+    private AnnotationConfigApplicationContext context;
+
+    private LowRedisUtil lowRedisUtil;
+
+    private Leaderboard leaderboard;
+
+    @Setup
+    public void setUp() {
+        redis = EmbeddedRedis.start();
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("datasource.redis.host", "localhost");
+        properties.put("datasource.redis.port", String.valueOf(redis.getPort()));
+        properties.put("datasource.redis.database", "0");
+        context = new AnnotationConfigApplicationContext();
+        context.getEnvironment().getPropertySources().addFirst(new MapPropertySource("benchmark", properties));
+        context.register(LowRedisUtil.class);
+        context.refresh();
+        lowRedisUtil = context.getBean(LowRedisUtil.class);
+
+        lowRedisUtil.del(KEY);
+        Map<String, Double> scores = new HashMap<>(members * 2);
+        for (int i = 0; i < members; i++) {
+            scores.put("member-" + i, ThreadLocalRandom.current().nextDouble(1000000));
+        }
+        lowRedisUtil.zaddAll(KEY, scores);
+        leaderboard = new Leaderboard(lowRedisUtil, KEY, 1000, 1000, 10000);
+    }
+
+    @TearDown
+    public void tearDown() {
+        System.out.println("\n" + leaderboard);
+        leaderboard.close();
+        context.close();
+        redis.stop();
+    }
+
+    @Benchmark
+    public String firstFullSet() {
+        // 修改前的zrevrangeByscore
+        ShardedJedis jedis = lowRedisUtil.getConnection();
+        try {
+            Set<String> s = jedis.zrevrangeByScore(KEY, "+inf", "-inf");
+            return s.iterator().next();
+        } finally {
+            lowRedisUtil.closeConnection(jedis);
+        }
+    }
+
+    @Benchmark
+    public String first() {
+        return lowRedisUtil.zrevrangeByscore(KEY);
+    }
+
+    @Benchmark
+    public Object top10Uncached() {
+        return lowRedisUtil.zrevrangeWithScores(KEY, 0, 9);
+    }
+
+    @Benchmark
+    public List<Leaderboard.Entry> top10Cached() {
+        return leaderboard.top(10);
+    }
+
+    @Benchmark
+    public Leaderboard.Entry rank() {
+        return leaderboard.rank("member-" + ThreadLocalRandom.current().nextInt(members));
+    }
+
+    @Benchmark
+    public double incrEach() {
+        double score = 0;
+        for (int i = 0; i < BATCH; i++) {
+            score = lowRedisUtil.zincrbyDouble(KEY, 0.5, "member-" + ThreadLocalRandom.current().nextInt(members));
+        }
+        return score;
+    }
+
+    @Benchmark
+    public boolean incrAll() {
+        Map<String, Double> increments = new HashMap<>(BATCH * 2);
+        for (int i = 0; i < BATCH; i++) {
+            increments.put("member-" + ThreadLocalRandom.current().nextInt(members), 0.5);
+        }
+        return leaderboard.incrAll(increments);
+    }
+}
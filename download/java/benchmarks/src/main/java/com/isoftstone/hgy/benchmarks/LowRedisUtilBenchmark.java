@@ -0,0 +1,188 @@
+package com.isoftstone.hgy.benchmarks;
+
+import com.alibaba.fastjson.JSON;
+import com.isoftstone.ismart.analysis.util.LowRedisUtil;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.core.env.MapPropertySource;
+import redis.clients.jedis.ShardedJedis;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * LowRedisUtil连接借还、JSON读写开销及批量方法与逐个调用的对比(内嵌redis)
+ * <p>
+ * JSON解码的内存分配对比需加 -prof gc 运行，看gc.alloc.rate.norm；
+ * batchSize=32时批量方法的100条数据分4批发送，覆盖多批共用一个连接的情况
+ *
+ * @author Colin.Ye
+ * @version 1.0
+ * @ClassName LowRedisUtilBenchmark
+ * @date 2019/8/22
+ **/
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class LowRedisUtilBenchmark {
+
+    private static final int BATCH = 100;
+
+    @Param({"1000", "32"})
+    public int batchSize;
+
+    private EmbeddedRedis redis;
+
+    private AnnotationConfigApplicationContext context;
+
+    private LowRedisUtil lowRedisUtil;
+
+    private SamplePayload payload;
+
+    private List<String> keys;
+
+    private List<String> values;
+
+    @Setup
+    public void setUp() {
+        redis = EmbeddedRedis.start();
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("datasource.redis.host", "localhost");
+        properties.put("datasource.redis.port", String.valueOf(redis.getPort()));
+        properties.put("datasource.redis.database", "0");
+        properties.put("datasource.redis.batch-size", String.valueOf(batchSize));
+        context = new AnnotationConfigApplicationContext();
+        context.getEnvironment().getPropertySources().addFirst(new MapPropertySource("benchmark", properties));
+        context.register(LowRedisUtil.class);
+        context.refresh();
+        lowRedisUtil = context.getBean(LowRedisUtil.class);
+
+        payload = SamplePayload.create(10);
+        lowRedisUtil.setData("bench:string", "value");
+        lowRedisUtil.setJsonData("bench:json", payload);
+        keys = new ArrayList<>(BATCH);
+        values = new ArrayList<>(BATCH);
+        for (int i = 0; i < BATCH; i++) {
+            keys.add("bench:batch:" + i);
+            values.add("value-" + i);
+            lowRedisUtil.setData("bench:batch:" + i, "value-" + i);
+        }
+        List<SamplePayload> payloads = new ArrayList<>(BATCH);
+        for (int i = 0; i < BATCH; i++) {
+            payloads.add(payload);
+        }
+        lowRedisUtil.rpushAllJsonData("bench:json:list", payloads);
+
+        // 批量方法分多批时结果须完整
+        lowRedisUtil.del("bench:list");
+        if (!lowRedisUtil.rpushAll("bench:list", values) || lowRedisUtil.llen("bench:list") != BATCH
+                || lowRedisUtil.getData(keys).indexOf(null) >= 0) {
+            throw new IllegalStateException("批量写入/读取结果不完整，batchSize=" + batchSize);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+        redis.stop();
+    }
+
+    /**
+     * 每次调用都要借还连接的固定开销
+     */
+    @Benchmark
+    @Threads(4)
+    public void connectionChurn() {
+        ShardedJedis jedis = lowRedisUtil.getConnection();
+        lowRedisUtil.closeConnection(jedis);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public String getData() {
+        return lowRedisUtil.getData("bench:string");
+    }
+
+    @Benchmark
+    public boolean setJsonData() {
+        return lowRedisUtil.setJsonData("bench:json:written", payload);
+    }
+
+    @Benchmark
+    public Object getJsonData() {
+        return lowRedisUtil.getJsonData("bench:json", SamplePayload.class);
+    }
+
+    /**
+     * 逐个rpush，每次调用前清空list，两组开销相同
+     */
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public boolean rpushLoop() {
+        lowRedisUtil.del("bench:list");
+        boolean ok = true;
+        for (String value : values) {
+            ok &= lowRedisUtil.rpush("bench:list", value);
+        }
+        return ok;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public boolean rpushAll() {
+        lowRedisUtil.del("bench:list");
+        return lowRedisUtil.rpushAll("bench:list", values);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public Object getDataLoop() {
+        List<String> result = new ArrayList<>(BATCH);
+        for (String key : keys) {
+            result.add(lowRedisUtil.getData(key));
+        }
+        return result;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public Object getDataBatch() {
+        return lowRedisUtil.getData(keys);
+    }
+
+    /**
+     * 改为按字节读取前的做法: LRANGE返回String再解析，作为对照
+     */
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public Object getListJsonDataViaString() {
+        ShardedJedis jedis = lowRedisUtil.getConnection();
+        try {
+            List<SamplePayload> list = new ArrayList<>(BATCH);
+            for (String str : jedis.lrange("bench:json:list", 0, -1)) {
+                list.add(JSON.parseObject(str, SamplePayload.class));
+            }
+            return list;
+        } finally {
+            lowRedisUtil.closeConnection(jedis);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public Object getListJsonData() {
+        return lowRedisUtil.getListJsonData("bench:json:list", SamplePayload.class);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public long streamListJsonData() {
+        return lowRedisUtil.streamListJsonData("bench:json:list", SamplePayload.class).count();
+    }
+}
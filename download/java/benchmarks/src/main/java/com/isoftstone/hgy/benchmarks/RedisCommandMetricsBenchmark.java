@@ -0,0 +1,46 @@
+package com.isoftstone.hgy.benchmarks;
+
+import com.isoftstone.hgy.utils.redis.RedisCommandMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 每条命令附加的统计开销：未启用(DISABLED) vs 启用(SimpleMeterRegistry，p50/p99/p999)
+ * <p>
+ * 不连接redis，只测start()+record()本身，与LowRedisUtilBenchmark中单条命令的耗时对照
+ *
+ * @author Colin.Ye
+ * @version 1.0
+ * @ClassName RedisCommandMetricsBenchmark
+ * @date 2019/8/22
+ **/
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class RedisCommandMetricsBenchmark {
+
+    @Param({"false", "true"})
+    public boolean enabled;
+
+    private RedisCommandMetrics metrics;
+
+    private String value;
+
+    @Setup
+    public void setUp() {
+        metrics = enabled ? new RedisCommandMetrics(new SimpleMeterRegistry(), "jedis", ':', 64) : RedisCommandMetrics.DISABLED;
+        value = SamplePayload.create(10).toString();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void record() {
+        long start = metrics.start();
+        metrics.record("get", "bench:string", start, value);
+    }
+}
@@ -0,0 +1,77 @@
+package com.isoftstone.hgy.benchmarks;
+
+import com.isoftstone.hgy.utils.redis.RedisConfig;
+import com.isoftstone.hgy.utils.redis.RedisUtil;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 64个线程对少数热点key计数：每次INCR/HINCRBYFLOAT直接写redis vs 计数器写缓冲(redis.counter.buffered)(内嵌redis)
+ *
+ * @author Colin.Ye
+ * @version 1.0
+ * @ClassName RedisCounterBenchmark
+ * @date 2019/8/22
+ **/
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(64)
+public class RedisCounterBenchmark {
+
+    private static final String[] KEYS = {"bench:counter:0", "bench:counter:1", "bench:counter:2", "bench:counter:3"};
+
+    private static final String[] ITEMS = {"pv", "uv", "click", "error"};
+
+    @Param({"false", "true"})
+    public boolean buffered;
+
+    private EmbeddedRedis redis;
+
+    private AnnotationConfigApplicationContext context;
+
+    private RedisUtil redisUtil;
+
+    @Setup
+    public void setUp() {
+        redis = EmbeddedRedis.start();
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("redis.counter.buffered", String.valueOf(buffered));
+        properties.put("redis.counter.flush-interval", "100");
+        context = new AnnotationConfigApplicationContext();
+        context.getEnvironment().getPropertySources().addFirst(new MapPropertySource("benchmark", properties));
+        context.registerBean(LettuceConnectionFactory.class, () -> new LettuceConnectionFactory("localhost", redis.getPort()));
+        context.register(RedisConfig.class, RedisUtil.class);
+        context.refresh();
+        redisUtil = context.getBean(RedisUtil.class);
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (redisUtil.getCounterBuffer() != null) {
+            System.out.println("\n" + redisUtil.getCounterBuffer());
+        }
+        context.close();
+        redis.stop();
+    }
+
+    @Benchmark
+    public long incr() {
+        return redisUtil.incr(KEYS[ThreadLocalRandom.current().nextInt(KEYS.length)], 1);
+    }
+
+    @Benchmark
+    public double hincr() {
+        return redisUtil.hincr("bench:counter:hash", ITEMS[ThreadLocalRandom.current().nextInt(ITEMS.length)], 1);
+    }
+}
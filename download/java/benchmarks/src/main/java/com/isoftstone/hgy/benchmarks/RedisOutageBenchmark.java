@@ -0,0 +1,101 @@
+package com.isoftstone.hgy.benchmarks;
+
+import com.isoftstone.ismart.analysis.util.LowRedisUtil;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.core.env.MapPropertySource;
+import redis.clients.jedis.ShardedJedis;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * redis故障期间的吞吐：每条命令都失败时，原来的e.printStackTrace() vs RedisErrorReporter(限流日志+计数)
+ * <p>
+ * 连接FailingRedisStandIn，16个线程并发调用getData。System.err重定向到临时文件，
+ * 与控制台一样是带锁的PrintStream，但不刷屏
+ *
+ * @author Colin.Ye
+ * @version 1.0
+ * @ClassName RedisOutageBenchmark
+ * @date 2019/8/22
+ **/
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(16)
+public class RedisOutageBenchmark {
+
+    private static final String KEY = "bench:outage";
+
+    @Param({"printStackTrace", "reporter"})
+    public String errorPath;
+
+    private FailingRedisStandIn standIn;
+
+    private AnnotationConfigApplicationContext context;
+
+    private LowRedisUtil lowRedisUtil;
+
+    private PrintStream originalErr;
+
+    private File errFile;
+
+    @Setup
+    public void setUp() throws IOException {
+        standIn = FailingRedisStandIn.start();
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("datasource.redis.host", "localhost");
+        properties.put("datasource.redis.port", String.valueOf(standIn.getPort()));
+        properties.put("datasource.redis.database", "0");
+        properties.put("datasource.redis.pool.warm-up", "0");
+        context = new AnnotationConfigApplicationContext();
+        context.getEnvironment().getPropertySources().addFirst(new MapPropertySource("benchmark", properties));
+        context.register(LowRedisUtil.class);
+        context.refresh();
+        lowRedisUtil = context.getBean(LowRedisUtil.class);
+
+        originalErr = System.err;
+        errFile = File.createTempFile("redis-outage", ".log");
+        System.setErr(new PrintStream(new BufferedOutputStream(new FileOutputStream(errFile), 128), true));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        System.err.close();
+        System.setErr(originalErr);
+        System.out.println("\nerrors=" + lowRedisUtil.getErrorReporter().getErrorCount()
+                + " suppressed=" + lowRedisUtil.getErrorReporter().getSuppressedCount()
+                + " stderr bytes=" + errFile.length());
+        errFile.delete();
+        context.close();
+        standIn.close();
+    }
+
+    @Benchmark
+    public String getData() {
+        if ("reporter".equals(errorPath)) {
+            return lowRedisUtil.getData(KEY);
+        }
+        // 修改前的getData
+        ShardedJedis jedis = null;
+        try {
+            jedis = lowRedisUtil.getConnection();
+            return jedis.get(KEY);
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            lowRedisUtil.closeConnection(jedis);
+        }
+        return null;
+    }
+}
@@ -0,0 +1,198 @@
+package com.isoftstone.hgy.benchmarks;
+
+import com.isoftstone.hgy.utils.redis.AsyncRedisUtil;
+import com.isoftstone.hgy.utils.redis.RedisConfig;
+import com.isoftstone.hgy.utils.redis.RedisUtil;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RedisUtil单次调用开销、批量方法与逐个调用及AsyncRedisUtil并发发出的对比(内嵌redis)
+ *
+ * @author Colin.Ye
+ * @version 1.0
+ * @ClassName RedisUtilBenchmark
+ * @date 2019/8/22
+ **/
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class RedisUtilBenchmark {
+
+    private static final int BATCH = 100;
+
+    private static final long TTL = 600;
+
+    @Param({"false", "true"})
+    public boolean nearCache;
+
+    private EmbeddedRedis redis;
+
+    private AnnotationConfigApplicationContext context;
+
+    private RedisUtil redisUtil;
+
+    private AsyncRedisUtil asyncRedisUtil;
+
+    private SamplePayload payload;
+
+    private List<String> keys;
+
+    private Map<String, Object> batch;
+
+    @Setup
+    public void setUp() {
+        redis = EmbeddedRedis.start();
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("redis.near-cache.enabled", String.valueOf(nearCache));
+        properties.put("redis.async.enabled", "true");
+        context = new AnnotationConfigApplicationContext();
+        context.getEnvironment().getPropertySources().addFirst(new MapPropertySource("benchmark", properties));
+        context.registerBean(LettuceConnectionFactory.class, () -> new LettuceConnectionFactory("localhost", redis.getPort()));
+        context.register(RedisConfig.class, RedisUtil.class, AsyncRedisUtil.class);
+        context.refresh();
+        redisUtil = context.getBean(RedisUtil.class);
+        asyncRedisUtil = context.getBean(AsyncRedisUtil.class);
+
+        payload = SamplePayload.create(10);
+        keys = new ArrayList<>(BATCH);
+        batch = new LinkedHashMap<>(BATCH * 2);
+        for (int i = 0; i < BATCH; i++) {
+            keys.add("bench:batch:" + i);
+            batch.put("bench:batch:" + i, payload);
+        }
+        redisUtil.set("bench:value", payload);
+        redisUtil.hset("bench:hash", "item", payload);
+        redisUtil.mset(batch, TTL);
+        if (nearCache) {
+            verifyInvalidation(properties);
+        }
+    }
+
+    /**
+     * 第二个节点缓存key后，本节点写入，广播须清除第二个节点的近端缓存
+     */
+    private void verifyInvalidation(Map<String, Object> properties) {
+        AnnotationConfigApplicationContext other = new AnnotationConfigApplicationContext();
+        other.getEnvironment().getPropertySources().addFirst(new MapPropertySource("benchmark", properties));
+        other.registerBean(LettuceConnectionFactory.class, () -> new LettuceConnectionFactory("localhost", redis.getPort()));
+        other.register(RedisConfig.class, RedisUtil.class);
+        other.refresh();
+        try {
+            RedisUtil otherUtil = other.getBean(RedisUtil.class);
+            redisUtil.set("bench:invalidate", "before");
+            otherUtil.get("bench:invalidate");
+            // 监听容器异步订阅，订阅完成前的广播会丢失，重复写入直到收到
+            long deadline = System.currentTimeMillis() + 5000;
+            do {
+                redisUtil.set("bench:invalidate", "after");
+                Thread.sleep(50);
+            } while (otherUtil.getNearCacheInvalidator().getReceivedCount() == 0 && System.currentTimeMillis() < deadline);
+            if (!"after".equals(otherUtil.get("bench:invalidate"))) {
+                throw new IllegalStateException("近端缓存失效广播未送达: " + otherUtil.getNearCacheInvalidator());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } finally {
+            other.close();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+        redis.stop();
+    }
+
+    @Benchmark
+    public Object get() {
+        return redisUtil.get("bench:value");
+    }
+
+    @Benchmark
+    public boolean set() {
+        return redisUtil.set("bench:written", payload);
+    }
+
+    @Benchmark
+    public Object hget() {
+        return redisUtil.hget("bench:hash", "item");
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public Object getLoop() {
+        List<Object> values = new ArrayList<>(BATCH);
+        for (String key : keys) {
+            values.add(redisUtil.get(key));
+        }
+        return values;
+    }
+
+    /**
+     * 全部发出后再等待，BATCH次往返在一个连接上重叠
+     */
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public Object getAsync() {
+        List<CompletableFuture<Object>> futures = new ArrayList<>(BATCH);
+        for (String key : keys) {
+            futures.add(asyncRedisUtil.get(key));
+        }
+        List<Object> values = new ArrayList<>(BATCH);
+        for (CompletableFuture<Object> future : futures) {
+            values.add(future.join());
+        }
+        return values;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public Object mget() {
+        return redisUtil.mget(keys);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public boolean setLoop() {
+        boolean ok = true;
+        for (Map.Entry<String, Object> entry : batch.entrySet()) {
+            ok &= redisUtil.set(entry.getKey(), entry.getValue(), TTL);
+        }
+        return ok;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public boolean setAsync() {
+        List<CompletableFuture<Boolean>> futures = new ArrayList<>(BATCH);
+        for (Map.Entry<String, Object> entry : batch.entrySet()) {
+            futures.add(asyncRedisUtil.set(entry.getKey(), entry.getValue(), TTL));
+        }
+        boolean ok = true;
+        for (CompletableFuture<Boolean> future : futures) {
+            ok &= future.join();
+        }
+        return ok;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public boolean mset() {
+        return redisUtil.mset(batch, TTL);
+    }
+}
@@ -0,0 +1,134 @@
+package com.isoftstone.hgy.benchmarks;
+
+import com.sun.net.httpserver.HttpServer;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 聚合接口扇出调用：顺序调用 vs RestTemplateUtils.invokeAll
+ * <p>
+ * 本地HTTP桩每个请求固定延迟delayMillis，顺序调用耗时约为 calls * delayMillis，
+ * invokeAll约为 delayMillis 加上调度开销
+ *
+ * @author Colin.Ye
+ * @version 1.0
+ * @ClassName RestTemplateFanOutBenchmark
+ * @date 2019/8/22
+ **/
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class RestTemplateFanOutBenchmark {
+
+    private static final byte[] RESPONSE = "{\"code\":0}".getBytes(StandardCharsets.UTF_8);
+
+    @Param({"10", "30"})
+    public int calls;
+
+    @Param({"20"})
+    public int delayMillis;
+
+    private HttpServer server;
+
+    private ExecutorService serverExecutor;
+
+    private AnnotationConfigApplicationContext context;
+
+    private Object restTemplateUtils;
+
+    private MethodHandle httpGetTraditional;
+
+    private MethodHandle invokeAll;
+
+    private List<Object> httpCalls;
+
+    private String url;
+
+    private Map<String, Object> params;
+
+    @Setup
+    public void setUp() throws Throwable {
+        serverExecutor = Executors.newCachedThreadPool();
+        // 桩的响应头和响应体分两次写出，不关闭Nagle时会与客户端的延迟ACK叠加出约40ms延迟
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(serverExecutor);
+        server.createContext("/", exchange -> {
+            try {
+                Thread.sleep(delayMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, RESPONSE.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(RESPONSE);
+            }
+        });
+        server.start();
+        url = "http://localhost:" + server.getAddress().getPort() + "/api/query";
+
+        Class<?> type = Class.forName("RestTemplateUtils");
+        Class<?> callType = Class.forName("RestTemplateUtils$HttpCall");
+        context = new AnnotationConfigApplicationContext();
+        context.registerBean(RestTemplate.class, () -> new RestTemplate());
+        context.register(type);
+        context.refresh();
+        restTemplateUtils = context.getBean(type);
+
+        MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+        httpGetTraditional = lookup.findVirtual(type, "httpGetTraditional",
+                MethodType.methodType(Object.class, String.class, Map.class, Map.class, Class.class));
+        invokeAll = lookup.findVirtual(type, "invokeAll",
+                MethodType.methodType(List.class, List.class, long.class, TimeUnit.class));
+        MethodHandle getTraditional = lookup.findStatic(callType, "getTraditional",
+                MethodType.methodType(callType, String.class, Map.class, Map.class, Class.class));
+
+        params = new LinkedHashMap<>();
+        params.put("userId", 10086);
+        params.put("type", "analysis");
+        httpCalls = new ArrayList<>();
+        for (int i = 0; i < calls; i++) {
+            httpCalls.add(getTraditional.invoke(url, params, null, String.class));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    @Benchmark
+    public List<Object> sequential() throws Throwable {
+        List<Object> results = new ArrayList<>(calls);
+        for (int i = 0; i < calls; i++) {
+            results.add(httpGetTraditional.invoke(restTemplateUtils, url, params, null, String.class));
+        }
+        return results;
+    }
+
+    @Benchmark
+    public Object invokeAll() throws Throwable {
+        return invokeAll.invoke(restTemplateUtils, httpCalls, 5L, TimeUnit.SECONDS);
+    }
+}
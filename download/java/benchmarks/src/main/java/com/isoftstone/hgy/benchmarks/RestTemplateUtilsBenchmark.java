@@ -0,0 +1,136 @@
+package com.isoftstone.hgy.benchmarks;
+
+import com.sun.net.httpserver.HttpServer;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.mock.http.client.MockClientHttpRequest;
+import org.springframework.mock.http.client.MockClientHttpResponse;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RestTemplateUtils.httpGetTraditional开销
+ * <p>
+ * transport=stub 不走网络，主要是URL拼接及RestTemplate本身的开销；transport=http 请求本地HTTP桩；
+ * transport=pooled 同样请求本地HTTP桩，RestTemplate由RestTemplateConfig提供(连接池+keep-alive)。
+ * RestTemplateUtils在默认包中无法直接引用，通过MethodHandle调用，各组之间的这部分开销相同
+ *
+ * @author Colin.Ye
+ * @version 1.0
+ * @ClassName RestTemplateUtilsBenchmark
+ * @date 2019/8/22
+ **/
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class RestTemplateUtilsBenchmark {
+
+    private static final byte[] RESPONSE = "{\"code\":0}".getBytes(StandardCharsets.UTF_8);
+
+    @Param({"stub", "http", "pooled"})
+    public String transport;
+
+    private HttpServer server;
+
+    /**
+     * 本地HTTP桩收到请求的客户端地址，数量即建立的TCP连接数
+     */
+    private final Set<InetSocketAddress> connections = ConcurrentHashMap.newKeySet();
+
+    private AnnotationConfigApplicationContext context;
+
+    private Object restTemplateUtils;
+
+    private MethodHandle httpGetTraditional;
+
+    private String url;
+
+    private Map<String, Object> params;
+
+    private Map<String, String> headers;
+
+    @Setup
+    public void setUp() throws Exception {
+        RestTemplate restTemplate = new RestTemplate();
+        if (!"stub".equals(transport)) {
+            // 桩的响应头和响应体分两次写出，不关闭Nagle时会与客户端的延迟ACK叠加出约40ms延迟
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+            server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+            server.createContext("/", exchange -> {
+                connections.add(exchange.getRemoteAddress());
+                exchange.getResponseHeaders().add("Content-Type", "application/json");
+                exchange.sendResponseHeaders(200, RESPONSE.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(RESPONSE);
+                }
+            });
+            server.start();
+            url = "http://localhost:" + server.getAddress().getPort() + "/api/query";
+        } else {
+            restTemplate.setRequestFactory(stubRequestFactory());
+            url = "http://localhost/api/query";
+        }
+
+        Class<?> type = Class.forName("RestTemplateUtils");
+        context = new AnnotationConfigApplicationContext();
+        if ("pooled".equals(transport)) {
+            context.register(Class.forName("RestTemplateConfig"));
+        } else {
+            context.registerBean(RestTemplate.class, () -> restTemplate);
+        }
+        context.register(type);
+        context.refresh();
+        restTemplateUtils = context.getBean(type);
+        httpGetTraditional = MethodHandles.publicLookup().findVirtual(type, "httpGetTraditional",
+                MethodType.methodType(Object.class, String.class, Map.class, Map.class, Class.class));
+
+        params = new LinkedHashMap<>();
+        params.put("userId", 10086);
+        params.put("type", "analysis");
+        params.put("startTime", "2019-08-01 00:00:00");
+        params.put("endTime", "2019-08-31 23:59:59");
+        params.put("page", 1);
+        headers = new LinkedHashMap<>();
+        headers.put("Authorization", "Bearer benchmark");
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+        if (server != null) {
+            server.stop(0);
+            System.out.println("transport=" + transport + " 建立连接数: " + connections.size());
+        }
+    }
+
+    @Benchmark
+    public Object httpGetTraditional() throws Throwable {
+        return httpGetTraditional.invoke(restTemplateUtils, url, params, headers, String.class);
+    }
+
+    private static ClientHttpRequestFactory stubRequestFactory() {
+        return (uri, httpMethod) -> {
+            MockClientHttpRequest request = new MockClientHttpRequest(httpMethod, uri);
+            MockClientHttpResponse response = new MockClientHttpResponse(RESPONSE, HttpStatus.OK);
+            response.getHeaders().add("Content-Type", "application/json");
+            request.setResponse(response);
+            return request;
+        };
+    }
+}
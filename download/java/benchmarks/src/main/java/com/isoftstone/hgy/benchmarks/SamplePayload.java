@@ -0,0 +1,82 @@
+package com.isoftstone.hgy.benchmarks;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 压测用的缓存对象，结构接近业务中常见的配置/统计数据
+ *
+ * @author Colin.Ye
+ * @version 1.0
+ * @ClassName SamplePayload
+ * @date 2019/8/22
+ **/
+public class SamplePayload {
+
+    private long id;
+    private String name;
+    private double score;
+    private List<String> tags;
+    private Map<String, Long> counters;
+
+    public static SamplePayload create(int items) {
+        SamplePayload payload = new SamplePayload();
+        payload.id = 10086L;
+        payload.name = "analysis-result";
+        payload.score = 98.6;
+        payload.tags = new ArrayList<>(items);
+        payload.counters = new LinkedHashMap<>(items * 2);
+        for (int i = 0; i < items; i++) {
+            payload.tags.add("tag-" + i);
+            payload.counters.put("counter-" + i, (long) i * 31);
+        }
+        return payload;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public double getScore() {
+        return score;
+    }
+
+    public void setScore(double score) {
+        this.score = score;
+    }
+
+    public List<String> getTags() {
+        return tags;
+    }
+
+    public void setTags(List<String> tags) {
+        this.tags = tags;
+    }
+
+    public Map<String, Long> getCounters() {
+        return counters;
+    }
+
+    public void setCounters(Map<String, Long> counters) {
+        this.counters = counters;
+    }
+
+    @Override
+    public String toString() {
+        return "SamplePayload{id=" + id + ", name=" + name + ", tags=" + tags.size() + "}";
+    }
+}
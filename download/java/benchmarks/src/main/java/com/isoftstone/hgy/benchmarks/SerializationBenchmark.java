@@ -0,0 +1,125 @@
+package com.isoftstone.hgy.benchmarks;
+
+import com.alibaba.fastjson.JSON;
+import com.isoftstone.hgy.utils.redis.RedisConfig;
+import com.isoftstone.hgy.utils.redis.ValueCompressor;
+import com.isoftstone.ismart.analysis.util.JsonBytes;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 序列化压测：RedisConfig的jackson/compact方式与LowRedisUtil使用的fastjson对比
+ * <p>
+ * fastjson的三种解码方式需加 -prof gc 对比内存分配
+ *
+ * @author Colin.Ye
+ * @version 1.0
+ * @ClassName SerializationBenchmark
+ * @date 2019/8/22
+ **/
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class SerializationBenchmark {
+
+    @Param({"10", "1000"})
+    public int items;
+
+    private SamplePayload payload;
+
+    private RedisSerializer<Object> jackson;
+    private RedisSerializer<Object> compact;
+
+    private byte[] jacksonBytes;
+    private byte[] compactBytes;
+    private byte[] fastjsonBytes;
+
+    @Setup
+    public void setUp() throws Exception {
+        payload = SamplePayload.create(items);
+        RedisConfig config = new RedisConfig();
+        DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+        jackson = config.redisValueSerializer("json", new String[0], new String[0], beanFactory.getBeanProvider(ValueCompressor.class));
+        compact = config.redisValueSerializer("compact", new String[]{SamplePayload.class.getName()}, new String[0],
+                beanFactory.getBeanProvider(ValueCompressor.class));
+        jacksonBytes = jackson.serialize(payload);
+        compactBytes = compact.serialize(payload);
+        fastjsonBytes = JSON.toJSONBytes(payload);
+        verifyLongStrings();
+    }
+
+    /**
+     * 长字符串字段在fastjson读缓冲区(16K字符)附近及以上须能完整往返
+     */
+    private static void verifyLongStrings() {
+        // 是否失败取决于字符串跨过缓冲区边界的位置，16K附近逐个长度检查
+        List<Integer> lengths = new ArrayList<>();
+        for (int length = 16300; length <= 16500; length++) {
+            lengths.add(length);
+        }
+        lengths.addAll(Arrays.asList(17000, 24000, 30000, 50000, 100000, 200000, 500000));
+        for (int length : lengths) {
+            char[] chars = new char[length];
+            Arrays.fill(chars, 'x');
+            SamplePayload expected = SamplePayload.create(1);
+            expected.setName(new String(chars));
+            SamplePayload actual = JsonBytes.parseObject(JSON.toJSONBytes(expected), SamplePayload.class);
+            if (actual == null || !expected.getName().equals(actual.getName())) {
+                throw new IllegalStateException("JsonBytes长字符串往返失败，length=" + length);
+            }
+        }
+    }
+
+    @Benchmark
+    public byte[] jacksonSerialize() {
+        return jackson.serialize(payload);
+    }
+
+    @Benchmark
+    public Object jacksonDeserialize() {
+        return jackson.deserialize(jacksonBytes);
+    }
+
+    @Benchmark
+    public byte[] compactSerialize() {
+        return compact.serialize(payload);
+    }
+
+    @Benchmark
+    public Object compactDeserialize() {
+        return compact.deserialize(compactBytes);
+    }
+
+    @Benchmark
+    public byte[] fastjsonSerialize() {
+        return JSON.toJSONBytes(payload);
+    }
+
+    @Benchmark
+    public Object fastjsonDeserialize() {
+        return JSON.parseObject(fastjsonBytes, SamplePayload.class);
+    }
+
+    /**
+     * 先解码成String再解析，LowRedisUtil改为按字节读取前的做法
+     */
+    @Benchmark
+    public Object fastjsonDeserializeViaString() {
+        return JSON.parseObject(new String(fastjsonBytes, StandardCharsets.UTF_8), SamplePayload.class);
+    }
+
+    @Benchmark
+    public Object fastjsonDeserializeJsonBytes() {
+        return JsonBytes.parseObject(fastjsonBytes, SamplePayload.class);
+    }
+}
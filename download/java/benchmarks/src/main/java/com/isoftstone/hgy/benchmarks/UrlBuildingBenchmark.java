@@ -0,0 +1,98 @@
+package com.isoftstone.hgy.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.web.util.DefaultUriBuilderFactory;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * GET/DELETE的URL拼接：原实现(StringBuilder + replaceAll，再由RestTemplate按URI模板解析编码) vs HttpUrls
+ * <p>
+ * 两组的结果都是最终发出请求的URI；加 -prof gc 查看每次的分配量
+ *
+ * @author Colin.Ye
+ * @version 1.0
+ * @ClassName UrlBuildingBenchmark
+ * @date 2019/8/22
+ **/
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class UrlBuildingBenchmark {
+
+    private static final String URL = "http://localhost:8080/api/analysis/query";
+
+    @Param({"1", "10", "50"})
+    public int paramCount;
+
+    /**
+     * 与RestTemplate默认的uriTemplateHandler一致
+     */
+    private DefaultUriBuilderFactory uriTemplateHandler;
+
+    private MethodHandle traditional;
+
+    private MethodHandle placeholder;
+
+    private Map<String, Object> params;
+
+    private List<Object> pathParams;
+
+    @Setup
+    public void setUp() throws Exception {
+        uriTemplateHandler = new DefaultUriBuilderFactory();
+        uriTemplateHandler.setEncodingMode(DefaultUriBuilderFactory.EncodingMode.URI_COMPONENT);
+
+        Class<?> type = Class.forName("HttpUrls");
+        MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+        traditional = lookup.findStatic(type, "traditional", MethodType.methodType(URI.class, String.class, Map.class));
+        placeholder = lookup.findStatic(type, "placeholder", MethodType.methodType(URI.class, String.class, List.class));
+
+        params = new LinkedHashMap<>();
+        pathParams = new ArrayList<>();
+        for (int i = 0; i < paramCount; i++) {
+            Object value = i % 2 == 0 ? (Object) (10086 + i) : "2019-08-01 00:00:" + i;
+            params.put("param" + i, value);
+            pathParams.add(i % 2 == 0 ? value : "item" + i);
+        }
+    }
+
+    @Benchmark
+    public URI legacyTraditional() {
+        StringBuilder sb = new StringBuilder(URL);
+        sb.append("?");
+        params.forEach((o1, o2) -> sb.append(o1).append("=").append(o2).append("&"));
+        String url = sb.toString().replaceAll("&$+|\\?$+", "");
+        return uriTemplateHandler.expand(url, Collections.emptyMap());
+    }
+
+    @Benchmark
+    public Object httpUrlsTraditional() throws Throwable {
+        return traditional.invoke(URL, params);
+    }
+
+    @Benchmark
+    public URI legacyPlaceholder() {
+        StringBuilder sb = new StringBuilder(URL);
+        pathParams.forEach(o2 -> sb.append("/").append(o2));
+        String url = sb.toString().replaceAll("&$+|\\?$+", "");
+        return uriTemplateHandler.expand(url, Collections.emptyMap());
+    }
+
+    @Benchmark
+    public Object httpUrlsPlaceholder() throws Throwable {
+        return placeholder.invoke(URL, pathParams);
+    }
+}